@@ -0,0 +1,51 @@
+package fa.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fa.nfa.NFA;
+import fa.nfa.NFABuilder;
+
+/**
+ * Measures building an automaton with the NFA methods one call at a time and with NFABuilder.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConstructionBenchmark {
+    @Param({ "100", "1000", "10000" })
+    public int states;
+
+    @Param({ "1", "4" })
+    public int branching;
+
+    @Param({ "0.0", "0.2" })
+    public double epsilonDensity;
+
+    private RandomNFA shape;
+
+    @Setup
+    public void setUp() {
+        this.shape = new RandomNFA(this.states, this.branching, this.epsilonDensity, 42);
+    }
+
+    @Benchmark
+    public NFA addStateAndTransition() {
+        return this.shape.build();
+    }
+
+    @Benchmark
+    public NFA builder() {
+        NFABuilder builder = new NFABuilder().addSigma(RandomNFA.SIGMA).addStates(this.shape.names).setStart(this.shape.names[0]);
+        for (int i = 0; i < this.shape.names.length; i++) {
+            if (this.shape.finals[i]) {
+                builder.setFinal(this.shape.names[i]);
+            }
+        }
+        return builder.addTransitions(this.shape.from, this.shape.symbols, this.shape.to).build();
+    }
+}
@@ -0,0 +1,76 @@
+package fa.bench;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Stack;
+
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+/**
+ * The original HashSet-based simulation of NFA.accepts and NFA.maxCopies, including its
+ * Stack-based eClosure. Kept only as a baseline for comparing the current engines.
+ */
+final class HashSetBaseline {
+    private final NFA nfa;
+    private final NFAState start;
+
+    HashSetBaseline(NFA nfa, String startName) {
+        this.nfa = nfa;
+        this.start = nfa.getState(startName);
+    }
+
+    Set<NFAState> eClosure(NFAState s) {
+        Set<NFAState> closure = new HashSet<>();
+        Stack<NFAState> stack = new Stack<>();
+        stack.push(s);
+        closure.add(s);
+        while (!stack.isEmpty()) {
+            NFAState current = stack.pop();
+            for (NFAState nextState : current.getTransitions('e')) {
+                if (!closure.contains(nextState)) {
+                    stack.push(nextState);
+                    closure.add(nextState);
+                }
+            }
+        }
+        return closure;
+    }
+
+    boolean accepts(String s) {
+        Set<NFAState> currentStates = run(s, null);
+        for (NFAState state : currentStates) {
+            if (this.nfa.isFinal(state.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int maxCopies(String s) {
+        int[] copyMax = new int[1];
+        run(s, copyMax);
+        return copyMax[0];
+    }
+
+    private Set<NFAState> run(String s, int[] copyMax) {
+        Set<NFAState> currentStates = eClosure(this.start);
+        if (copyMax != null) {
+            copyMax[0] = currentStates.size();
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            Set<NFAState> nextStates = new HashSet<>();
+            for (NFAState state : currentStates) {
+                for (NFAState targetState : state.getTransitions(c)) {
+                    nextStates.addAll(eClosure(targetState));
+                }
+            }
+            if (copyMax != null) {
+                copyMax[0] = Math.max(copyMax[0], nextStates.size());
+            }
+            currentStates = nextStates;
+        }
+        return currentStates;
+    }
+}
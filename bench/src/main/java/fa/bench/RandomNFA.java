@@ -0,0 +1,92 @@
+package fa.bench;
+
+import java.util.Random;
+import java.util.Set;
+
+import fa.nfa.NFA;
+
+/**
+ * Generates reproducible random automata and inputs over the alphabet {0, 1}.
+ * Every state gets branching random targets on each symbol, and with probability
+ * epsilonDensity an epsilon edge to a random state. About a tenth of the states are final.
+ */
+final class RandomNFA {
+    static final char[] SIGMA = { '0', '1' };
+
+    final String[] names;
+    final String[] from;
+    final char[] symbols;
+    final String[] to;
+    final boolean[] finals;
+
+    RandomNFA(int states, int branching, double epsilonDensity, long seed) {
+        Random random = new Random(seed);
+        this.names = new String[states];
+        this.finals = new boolean[states];
+        for (int i = 0; i < states; i++) {
+            this.names[i] = "s" + i;
+            this.finals[i] = random.nextInt(10) == 0;
+        }
+
+        int epsilons = 0;
+        boolean[] hasEpsilon = new boolean[states];
+        for (int i = 0; i < states; i++) {
+            hasEpsilon[i] = random.nextDouble() < epsilonDensity;
+            epsilons += hasEpsilon[i] ? 1 : 0;
+        }
+
+        int edges = states * SIGMA.length * branching + epsilons;
+        this.from = new String[edges];
+        this.symbols = new char[edges];
+        this.to = new String[edges];
+        int e = 0;
+        for (int i = 0; i < states; i++) {
+            for (char symbol : SIGMA) {
+                for (int b = 0; b < branching; b++) {
+                    this.from[e] = this.names[i];
+                    this.symbols[e] = symbol;
+                    this.to[e++] = this.names[random.nextInt(states)];
+                }
+            }
+            if (hasEpsilon[i]) {
+                this.from[e] = this.names[i];
+                this.symbols[e] = 'e';
+                this.to[e++] = this.names[random.nextInt(states)];
+            }
+        }
+    }
+
+    /**
+     * Builds the automaton one addState/addTransition call at a time, like existing callers do
+     * @return the NFA
+     */
+    NFA build() {
+        NFA nfa = new NFA();
+        for (char symbol : SIGMA) {
+            nfa.addSigma(symbol);
+        }
+        for (int i = 0; i < this.names.length; i++) {
+            nfa.addState(this.names[i]);
+            if (this.finals[i]) {
+                nfa.setFinal(this.names[i]);
+            }
+        }
+        nfa.setStart(this.names[0]);
+        for (int e = 0; e < this.from.length; e++) {
+            nfa.addTransition(this.from[e], Set.of(this.to[e]), this.symbols[e]);
+        }
+        return nfa;
+    }
+
+    /**
+     * @return a random string of 0s and 1s
+     */
+    static String input(int length, long seed) {
+        Random random = new Random(seed);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = SIGMA[random.nextInt(SIGMA.length)];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,86 @@
+package fa.bench;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fa.nfa.LazyDFA;
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+/**
+ * Measures eClosure, accepts and maxCopies on random automata, next to the original
+ * HashSet simulation as a baseline. Run with -prof gc to see the allocation rate of each.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class SimulationBenchmark {
+    @Param({ "16", "64", "256", "4096" })
+    public int states;
+
+    @Param({ "1", "2" })
+    public int branching;
+
+    @Param({ "0.0", "0.2" })
+    public double epsilonDensity;
+
+    @Param({ "64", "4096" })
+    public int inputLength;
+
+    private NFA nfa;
+    private HashSetBaseline baseline;
+    private LazyDFA lazy;
+    private NFAState closureState;
+    private String input;
+
+    @Setup
+    public void setUp() {
+        RandomNFA shape = new RandomNFA(this.states, this.branching, this.epsilonDensity, 42);
+        this.nfa = shape.build();
+        this.nfa.compile();
+        this.baseline = new HashSetBaseline(this.nfa, shape.names[0]);
+        this.lazy = this.nfa.lazyDFA(64L << 20);
+        this.closureState = this.nfa.getState(shape.names[this.states / 2]);
+        this.input = RandomNFA.input(this.inputLength, 7);
+    }
+
+    @Benchmark
+    public Set<NFAState> eClosure() {
+        return this.nfa.eClosure(this.closureState);
+    }
+
+    @Benchmark
+    public boolean accepts() {
+        return this.nfa.accepts(this.input);
+    }
+
+    @Benchmark
+    public int maxCopies() {
+        return this.nfa.maxCopies(this.input);
+    }
+
+    @Benchmark
+    public boolean lazyDFAAccepts() {
+        return this.lazy.accepts(this.input);
+    }
+
+    @Benchmark
+    public Set<NFAState> hashSetEClosure() {
+        return this.baseline.eClosure(this.closureState);
+    }
+
+    @Benchmark
+    public boolean hashSetAccepts() {
+        return this.baseline.accepts(this.input);
+    }
+
+    @Benchmark
+    public int hashSetMaxCopies() {
+        return this.baseline.maxCopies(this.input);
+    }
+}
@@ -0,0 +1,143 @@
+package fa.nfa;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs one CompiledNFA over many inputs in parallel.
+ * The inputs are split into index ranges and each range is handled by a task with its own
+ * NFASimulator (or the automaton's immutable BitParallelNFA), so the only state shared between
+ * threads is the immutable automaton and the result array, where every task writes a disjoint
+ * range of indices. The inputs are copied into an array once, so a list without random
+ * access, such as a LinkedList, is not walked again for every input.
+ */
+final class BatchEvaluator {
+    // Ranges are split until they are about this many times smaller than an even share per thread
+    private static final int SPLITS_PER_THREAD = 4;
+    // Inputs per task on a plain executor; enough to outweigh scheduling a task, few enough to balance the load
+    private static final int INPUTS_PER_TASK = 256;
+
+    private final CompiledNFA nfa;
+    private final CharSequence[] inputs;
+    private final boolean[] accepted;
+    private final int[] copies;
+
+    private BatchEvaluator(CompiledNFA nfa, List<? extends CharSequence> inputs, boolean countCopies) {
+        this.nfa = nfa;
+        this.inputs = inputs.toArray(new CharSequence[0]);
+        this.accepted = countCopies ? null : new boolean[this.inputs.length];
+        this.copies = countCopies ? new int[this.inputs.length] : null;
+    }
+
+    /**
+     * Runs accepts on every input
+     * @param nfa the automaton
+     * @param inputs the input strings
+     * @param executor the executor to run on, or null for the common fork-join pool
+     * @return result[i] is whether inputs.get(i) is accepted
+     */
+    static boolean[] acceptsAll(CompiledNFA nfa, List<? extends CharSequence> inputs, Executor executor) {
+        BatchEvaluator batch = new BatchEvaluator(nfa, inputs, false);
+        batch.run(executor);
+        return batch.accepted;
+    }
+
+    /**
+     * Runs maxCopies on every input
+     * @param nfa the automaton
+     * @param inputs the input strings
+     * @param executor the executor to run on, or null for the common fork-join pool
+     * @return result[i] is the maxCopies of inputs.get(i)
+     */
+    static int[] maxCopiesAll(CompiledNFA nfa, List<? extends CharSequence> inputs, Executor executor) {
+        BatchEvaluator batch = new BatchEvaluator(nfa, inputs, true);
+        batch.run(executor);
+        return batch.copies;
+    }
+
+    private void run(Executor executor) {
+        int size = this.inputs.length;
+        if (executor == null) {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int leaf = Math.max(1, size / (pool.getParallelism() * SPLITS_PER_THREAD));
+            pool.invoke(new Range(0, size, leaf));
+            return;
+        }
+
+        // A plain executor cannot fork, so hand it evenly sized ranges of about INPUTS_PER_TASK inputs
+        int chunks = (size + INPUTS_PER_TASK - 1) / INPUTS_PER_TASK;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks];
+        for (int i = 0; i < chunks; i++) {
+            int from = (int) ((long) size * i / chunks);
+            int to = (int) ((long) size * (i + 1) / chunks);
+            futures[i] = CompletableFuture.runAsync(() -> evaluate(from, to), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    // Evaluates inputs[from .. to) on a simulator private to the calling thread, skipping inputs the prefilter rejects
+    private void evaluate(int from, int to) {
+        LiteralPrefilter prefilter = this.nfa.prefilter();
+        DeterministicNFA deterministic = this.nfa.deterministic;
+        if (deterministic != null) {
+            for (int i = from; i < to; i++) {
+                if (this.copies == null) {
+                    CharSequence input = this.inputs[i];
+                    this.accepted[i] = prefilter.mayAccept(input) && deterministic.accepts(input);
+                } else {
+                    this.copies[i] = deterministic.maxCopies(this.inputs[i]);
+                }
+            }
+            return;
+        }
+        BitParallelNFA bitParallel = this.nfa.bitParallel;
+        if (bitParallel != null) {
+            // Immutable, so every thread can share it
+            for (int i = from; i < to; i++) {
+                if (this.copies == null) {
+                    CharSequence input = this.inputs[i];
+                    this.accepted[i] = prefilter.mayAccept(input) && bitParallel.accepts(input);
+                } else {
+                    this.copies[i] = bitParallel.maxCopies(this.inputs[i]);
+                }
+            }
+            return;
+        }
+        NFASimulator simulator = new NFASimulator(this.nfa);
+        for (int i = from; i < to; i++) {
+            if (this.copies == null) {
+                CharSequence input = this.inputs[i];
+                this.accepted[i] = prefilter.mayAccept(input) && simulator.accepts(input);
+            } else {
+                this.copies[i] = simulator.maxCopies(this.inputs[i]);
+            }
+        }
+    }
+
+    private final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int leaf;
+
+        Range(int from, int to, int leaf) {
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.leaf) {
+                evaluate(this.from, this.to);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Range(this.from, middle, this.leaf), new Range(middle, this.to, this.leaf));
+        }
+    }
+}
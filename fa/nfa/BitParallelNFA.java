@@ -0,0 +1,138 @@
+package fa.nfa;
+
+/**
+ * Runs a CompiledNFA of at most 64 states with the whole active set in one long.
+ * This generalizes the Shift-And step D = ((D << 1) | init) & mask[c], which only fits
+ * automata shaped like a single chain, to any transition graph: the successors of every
+ * state on every symbol are precomputed as an epsilon-closed mask, and a step ORs together
+ * the masks of the active states.
+ *
+ * When the tables stay small, the masks are further combined per byte of the set, so a
+ * step is one lookup for each 8 states instead of one per active state.
+ * Nothing is allocated per input, and an instance is immutable and thread-safe.
+ */
+final class BitParallelNFA {
+    /** The most states an automaton can have for this engine */
+    static final int MAX_STATES = 64;
+    // 4096 longs are 32 KiB, the L1 data cache of most cores; a larger byte table misses there
+    // on most lookups, and the per-state loop over the successors is faster again
+    private static final int MAX_TABLE_SIZE = 1 << 12;
+
+    private final SymbolMap symbols;
+    private final int stateCount;
+    private final long startSet;
+    private final long finalSet;
+    private final long usefulSet;
+    // successors[sym * n + state] is the closed set reached from state on symbol sym
+    private final long[] successors;
+    // Successors of the states in byte b of a set, for each value of that byte, or null if too large
+    private final long[] byteTable;
+    private final int chunks;
+
+    /**
+     * Constructor for the bit-parallel form of an automaton
+     * @param nfa the automaton, with at most MAX_STATES states
+     */
+    BitParallelNFA(CompiledNFA nfa) {
+        int n = nfa.stateCount();
+        int k = nfa.symbolCount();
+        if (n > MAX_STATES) {
+            throw new IllegalArgumentException(n + " states do not fit in one long");
+        }
+        this.symbols = nfa.symbols;
+        this.stateCount = n;
+        this.finalSet = n == 0 ? 0 : nfa.finalBits[0];
+        this.usefulSet = n == 0 ? 0 : nfa.usefulBits[0];
+
+        long[] closures = new long[n];
+        for (int state = 0; state < n; state++) {
+            for (int i = nfa.closureOffsets[state]; i < nfa.closureOffsets[state + 1]; i++) {
+                closures[state] |= 1L << nfa.closureTargets[i];
+            }
+        }
+        this.startSet = nfa.start < 0 ? 0 : closures[nfa.start];
+
+        this.successors = new long[k * n];
+        for (int state = 0; state < n; state++) {
+            for (int sym = 0; sym < k; sym++) {
+                int row = state * k + sym;
+                for (int i = nfa.offsets[row]; i < nfa.offsets[row + 1]; i++) {
+                    this.successors[sym * n + state] |= closures[nfa.targets[i]];
+                }
+            }
+        }
+
+        this.chunks = (n + 7) >>> 3;
+        if ((long) k * this.chunks * 256 > MAX_TABLE_SIZE) {
+            this.byteTable = null;
+            return;
+        }
+        // Each entry adds the lowest state of its byte value to the entry without it
+        this.byteTable = new long[k * this.chunks * 256];
+        for (int sym = 0; sym < k; sym++) {
+            for (int b = 0; b < this.chunks; b++) {
+                int base = (sym * this.chunks + b) << 8;
+                for (int value = 1; value < 256; value++) {
+                    int state = (b << 3) + Integer.numberOfTrailingZeros(value);
+                    long reached = state < n ? this.successors[sym * n + state] : 0;
+                    this.byteTable[base + value] = this.byteTable[base + (value & (value - 1))] | reached;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves a set along its transitions on c
+     * @param set the active states, epsilon-closed
+     * @param c the input character
+     * @return the closed set of states reached
+     */
+    long step(long set, char c) {
+        int sym = this.symbols.id(c);
+        if (sym < 0) {
+            return 0;
+        }
+        long next = 0;
+        if (this.byteTable != null) {
+            int base = sym * this.chunks << 8;
+            for (int b = 0; b < this.chunks; b++) {
+                next |= this.byteTable[base + (b << 8) + (int) ((set >>> (b << 3)) & 0xFF)];
+            }
+            return next;
+        }
+        int base = sym * this.stateCount;
+        while (set != 0) {
+            next |= this.successors[base + Long.numberOfTrailingZeros(set)];
+            set &= set - 1;
+        }
+        return next;
+    }
+
+    /**
+     * Runs the automaton over all of s from the start state
+     * @param s the input string
+     * @return true if s is accepted
+     */
+    boolean accepts(CharSequence s) {
+        long set = this.startSet & this.usefulSet;
+        for (int i = 0; i < s.length() && set != 0; i++) {
+            set = step(set, s.charAt(i)) & this.usefulSet;
+        }
+        return (set & this.finalSet) != 0;
+    }
+
+    /**
+     * Runs the automaton over all of s from the start state
+     * @param s the input string
+     * @return the largest number of states active at once
+     */
+    int maxCopies(CharSequence s) {
+        long set = this.startSet;
+        int copyMax = Long.bitCount(set);
+        for (int i = 0; i < s.length() && set != 0; i++) {
+            set = step(set, s.charAt(i));
+            copyMax = Math.max(copyMax, Long.bitCount(set));
+        }
+        return copyMax;
+    }
+}
@@ -0,0 +1,63 @@
+package fa.nfa;
+
+/**
+ * The word-level operations NFASimulator runs on its long[] state sets.
+ * Large automata spend most of a step in these loops, so they are behind one
+ * interface with a plain scalar implementation and, when the JVM is started with
+ * --add-modules jdk.incubator.vector on hardware with vectors of two or more longs,
+ * a SIMD implementation built on the Vector API.
+ *
+ * Only one implementation is ever loaded in a JVM, so calls through KERNEL stay
+ * monomorphic and are inlined like direct calls.
+ */
+interface BitsetKernel {
+    /** The kernel used by every simulator; set fa.nfa.vector=false to force the scalar one */
+    BitsetKernel KERNEL = select();
+
+    /**
+     * ORs a row of words into a set
+     * @param set the set to add to
+     * @param rows array holding the row
+     * @param from index in rows of the row's first word; the row is set.length words long
+     */
+    void or(long[] set, long[] rows, int from);
+
+    /**
+     * Intersects a set with a mask in place
+     * @param set the set to narrow
+     * @param mask the states to keep
+     * @return true if the result is not empty
+     */
+    boolean and(long[] set, long[] mask);
+
+    /**
+     * @param a a set
+     * @param b a set with the same number of words
+     * @return true if a and b have a state in common
+     */
+    boolean intersects(long[] a, long[] b);
+
+    /**
+     * @param set a set
+     * @return the number of states in it
+     */
+    int popCount(long[] set);
+
+    /*
+     * Loads the vector kernel by name, so that neither this class nor the scalar kernel
+     * links against the incubator module. Without the module, or without wide vectors,
+     * the vector kernel is never touched.
+     */
+    private static BitsetKernel select() {
+        if (!Boolean.parseBoolean(System.getProperty("fa.nfa.vector", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarKernel();
+        }
+        try {
+            // The constructor throws (wrapped in an InvocationTargetException) if vectors are too narrow
+            return (BitsetKernel) Class.forName("fa.nfa.VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernel();
+        }
+    }
+}
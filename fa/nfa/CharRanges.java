@@ -0,0 +1,332 @@
+package fa.nfa;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BinaryOperator;
+
+/**
+ * A set of characters kept as sorted, disjoint ranges. Sigma is one of these, so adding
+ * 'a' to 'z' or all of Unicode stores one range instead of a boxed Character per symbol.
+ * Ranges that touch are joined, so a set has the same ranges however it was built.
+ * contains(char) is a binary search over the ranges and size() is kept up to date.
+ */
+final class CharRanges extends AbstractSet<Character> {
+    private char[] lo; // first characters of the ranges, ascending
+    private char[] hi; // last characters; hi[i] + 1 < lo[i + 1]
+    private int count; // number of ranges
+    private int size; // number of characters
+
+    /**
+     * Constructor for an empty set
+     */
+    CharRanges() {
+        this.lo = new char[4];
+        this.hi = new char[4];
+    }
+
+    /**
+     * Constructor for a copy of another set
+     * @param other the set to copy
+     */
+    CharRanges(CharRanges other) {
+        this.lo = Arrays.copyOf(other.lo, Math.max(4, other.count));
+        this.hi = Arrays.copyOf(other.hi, Math.max(4, other.count));
+        this.count = other.count;
+        this.size = other.size;
+    }
+
+    /**
+     * @return the number of ranges
+     */
+    int rangeCount() {
+        return this.count;
+    }
+
+    /**
+     * @param i an index below rangeCount()
+     * @return the first character of the i-th range in ascending order
+     */
+    char lo(int i) {
+        return this.lo[i];
+    }
+
+    /**
+     * @param i an index below rangeCount()
+     * @return the last character of the i-th range
+     */
+    char hi(int i) {
+        return this.hi[i];
+    }
+
+    /**
+     * @return the first characters of the ranges, ascending, in a new array
+     */
+    char[] los() {
+        return Arrays.copyOf(this.lo, this.count);
+    }
+
+    /**
+     * @return the last characters of the ranges, in a new array
+     */
+    char[] his() {
+        return Arrays.copyOf(this.hi, this.count);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Character && contains(((Character) o).charValue());
+    }
+
+    /**
+     * @param c a character
+     * @return true if c is in the set
+     */
+    boolean contains(char c) {
+        int i = rangeFrom(c);
+        return i < this.count && this.lo[i] <= c;
+    }
+
+    @Override
+    public boolean add(Character c) {
+        return add(c, c);
+    }
+
+    /**
+     * Adds every character from first to last, which is nothing if last is below first
+     * @param first the smallest character of the range
+     * @param last the largest character of the range
+     * @return true if the set changed
+     */
+    boolean add(char first, char last) {
+        if (first > last) {
+            return false;
+        }
+        // Ranges i..j-1 overlap or touch first..last and are replaced by their union with it
+        int i = first == 0 ? 0 : rangeFrom((char) (first - 1));
+        int j = i;
+        int from = first;
+        int to = last;
+        while (j < this.count && this.lo[j] <= last + 1) {
+            from = Math.min(from, this.lo[j]);
+            to = Math.max(to, this.hi[j]);
+            j++;
+        }
+        if (j == i + 1 && from == this.lo[i] && to == this.hi[i]) {
+            return false;
+        }
+        for (int r = i; r < j; r++) {
+            this.size -= this.hi[r] - this.lo[r] + 1;
+        }
+        this.size += to - from + 1;
+        replace(i, j, 1);
+        this.lo[i] = (char) from;
+        this.hi[i] = (char) to;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Character)) {
+            return false;
+        }
+        char c = (Character) o;
+        int i = rangeFrom(c);
+        if (i == this.count || this.lo[i] > c) {
+            return false;
+        }
+        if (this.lo[i] == c && this.hi[i] == c) {
+            replace(i, i + 1, 0);
+        } else if (this.lo[i] == c) {
+            this.lo[i]++;
+        } else if (this.hi[i] == c) {
+            this.hi[i]--;
+        } else {
+            char last = this.hi[i];
+            replace(i + 1, i + 1, 1);
+            this.hi[i] = (char) (c - 1);
+            this.lo[i + 1] = (char) (c + 1);
+            this.hi[i + 1] = last;
+        }
+        this.size--;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        this.count = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @param first the smallest character
+     * @param last the largest character
+     * @return a new set of the characters of this one from first to last
+     */
+    CharRanges between(char first, char last) {
+        CharRanges between = new CharRanges();
+        for (int i = first > last ? this.count : rangeFrom(first); i < this.count && this.lo[i] <= last; i++) {
+            between.add((char) Math.max(this.lo[i], first), (char) Math.min(this.hi[i], last));
+        }
+        return between;
+    }
+
+    @Override
+    public Iterator<Character> iterator() {
+        return new Iterator<Character>() {
+            private int range;
+            private int next = CharRanges.this.count == 0 ? 0 : CharRanges.this.lo[0];
+
+            @Override
+            public boolean hasNext() {
+                return this.range < CharRanges.this.count;
+            }
+
+            @Override
+            public Character next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                char c = (char) this.next;
+                if (c == CharRanges.this.hi[this.range] && ++this.range < CharRanges.this.count) {
+                    this.next = CharRanges.this.lo[this.range];
+                } else {
+                    this.next++;
+                }
+                return c;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CharRanges)) {
+            return super.equals(o);
+        }
+        CharRanges other = (CharRanges) o;
+        return this.count == other.count && Arrays.equals(this.lo, 0, this.count, other.lo, 0, other.count)
+                && Arrays.equals(this.hi, 0, this.count, other.hi, 0, other.count);
+    }
+
+    @Override
+    public int hashCode() {
+        // The sum of the characters, as for any other set of Characters
+        long hash = 0;
+        for (int i = 0; i < this.count; i++) {
+            hash += ((long) this.lo[i] + this.hi[i]) * (this.hi[i] - this.lo[i] + 1) / 2;
+        }
+        return (int) hash;
+    }
+
+    // Index of the first range ending at or after c, or count if there is none
+    private int rangeFrom(char c) {
+        return rangeFrom(this.hi, this.count, c);
+    }
+
+    // Replaces ranges i..j-1 by n uninitialized ones, moving the ranges after them
+    private void replace(int i, int j, int n) {
+        int newCount = this.count - (j - i) + n;
+        if (newCount > this.lo.length) {
+            int capacity = Math.max(newCount, this.lo.length * 2);
+            this.lo = Arrays.copyOf(this.lo, capacity);
+            this.hi = Arrays.copyOf(this.hi, capacity);
+        }
+        System.arraycopy(this.lo, j, this.lo, i + n, this.count - j);
+        System.arraycopy(this.hi, j, this.hi, i + n, this.count - j);
+        this.count = newCount;
+    }
+
+    /**
+     * Finds the range of a character among count sorted, disjoint ranges
+     * @param hi the last characters of the ranges, ascending
+     * @param count the number of ranges
+     * @param c a character
+     * @return the index of the first range ending at or after c, or count if there is none;
+     * c is in that range if its first character is not above c
+     */
+    static int rangeFrom(char[] hi, int count, char c) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hi[mid] < c) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merges two lists of sorted, disjoint ranges that each carry a value, such as the
+     * targets of a state on each of its ranges. A character covered by a range of both
+     * lists gets union.apply(value, added), one covered by an added range only gets
+     * union.apply(none, added), and one covered by an old range only keeps its value.
+     * Neighbouring pieces that end up with the same value object are joined, so the
+     * result has at most 2 * (lo.length + addLo.length) ranges.
+     * @param lo the first characters of the old ranges
+     * @param hi the last characters of the old ranges
+     * @param values the values of the old ranges
+     * @param addLo the first characters of the added ranges
+     * @param addHi the last characters of the added ranges
+     * @param added the values of the added ranges
+     * @param none the value union is given for a character no old range covers
+     * @param union combines an old and an added value
+     * @param outLo receives the first characters of the merged ranges
+     * @param outHi receives their last characters
+     * @param out receives their values
+     * @return the number of merged ranges
+     */
+    static <T> int merge(char[] lo, char[] hi, T[] values, char[] addLo, char[] addHi, T[] added,
+            T none, BinaryOperator<T> union, char[] outLo, char[] outHi, T[] out) {
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        int at = 0; // characters below at are done
+        T lastValue = null; // the last union computed, which neighbouring pieces often repeat
+        T lastAdded = null;
+        T lastUnion = null;
+        while (i < lo.length || j < addLo.length) {
+            int oldFrom = i < lo.length ? Math.max(lo[i], at) : Character.MAX_VALUE + 1;
+            int addFrom = j < addLo.length ? Math.max(addLo[j], at) : Character.MAX_VALUE + 1;
+            int from = Math.min(oldFrom, addFrom);
+            int to;
+            T value;
+            if (oldFrom < addFrom) {
+                to = Math.min(hi[i], addFrom - 1);
+                value = values[i];
+            } else {
+                T current = oldFrom == addFrom ? values[i] : none;
+                to = oldFrom == addFrom ? Math.min(hi[i], addHi[j]) : Math.min(addHi[j], oldFrom - 1);
+                if (current != lastValue || added[j] != lastAdded) {
+                    lastValue = current;
+                    lastAdded = added[j];
+                    lastUnion = union.apply(current, added[j]);
+                }
+                value = lastUnion;
+            }
+            if (size > 0 && out[size - 1] == value && outHi[size - 1] + 1 == from) {
+                outHi[size - 1] = (char) to;
+            } else {
+                outLo[size] = (char) from;
+                outHi[size] = (char) to;
+                out[size++] = value;
+            }
+            at = to + 1;
+            if (i < lo.length && hi[i] == to) {
+                i++;
+            }
+            if (j < addLo.length && addHi[j] == to) {
+                j++;
+            }
+        }
+        return size;
+    }
+}
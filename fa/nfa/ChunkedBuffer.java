@@ -0,0 +1,189 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A little-endian block of off-heap memory addressed by long offsets, kept as direct or
+ * mapped ByteBuffers of one chunk each, since a single ByteBuffer holds at most 2 GiB.
+ * Chunks are a power of two of at least 8 bytes, so a char, int or long at an offset
+ * aligned to its size never spans two chunks and costs one shift and one mask to find.
+ *
+ * The chunk size is 1 GiB unless the system property fa.nfa.offHeapChunkBits gives its
+ * logarithm, which the tests lower to cross chunk boundaries on small automata.
+ */
+final class ChunkedBuffer {
+    static final int CHUNK_BITS = Math.max(3, Math.min(30, Integer.getInteger("fa.nfa.offHeapChunkBits", 30)));
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    private final ByteBuffer[] chunks;
+    private final long size;
+
+    private ChunkedBuffer(ByteBuffer[] chunks, long size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * Allocates zeroed direct memory
+     * @param size the number of bytes
+     * @return the buffer
+     */
+    static ChunkedBuffer allocate(long size) {
+        return new ChunkedBuffer(new ByteBuffer[0], 0).grow(size);
+    }
+
+    /**
+     * Maps a whole file read-only, one mapping per chunk
+     * @param channel the open file
+     * @return the buffer
+     * @throws IOException if the file cannot be mapped
+     */
+    static ChunkedBuffer map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            long from = (long) i << CHUNK_BITS;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size - from, 1L << CHUNK_BITS))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new ChunkedBuffer(chunks, size);
+    }
+
+    private static int chunkCount(long size) {
+        long count = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("an automaton of " + size + " bytes is too large");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Enlarges the memory, keeping its contents. Full chunks are shared with this buffer
+     * and only the last one is copied, so growing never copies more than one chunk.
+     * @param size the new number of bytes, at least size()
+     * @return a buffer of the new size; this one must no longer be used
+     */
+    ChunkedBuffer grow(long size) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            int capacity = (int) Math.min(size - ((long) i << CHUNK_BITS), 1L << CHUNK_BITS);
+            if (i < this.chunks.length && this.chunks[i].capacity() == capacity) {
+                chunks[i] = this.chunks[i];
+            } else {
+                chunks[i] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                if (i < this.chunks.length) {
+                    chunks[i].put(this.chunks[i].duplicate().clear()).clear();
+                }
+            }
+        }
+        return new ChunkedBuffer(chunks, size);
+    }
+
+    /**
+     * @return the number of bytes
+     */
+    long size() {
+        return this.size;
+    }
+
+    private ByteBuffer chunk(long at) {
+        return this.chunks[(int) (at >>> CHUNK_BITS)];
+    }
+
+    // Absolute reads and writes of values at offsets aligned to their size
+    char getChar(long at) {
+        return chunk(at).getChar((int) (at & CHUNK_MASK));
+    }
+
+    void putChar(long at, char value) {
+        chunk(at).putChar((int) (at & CHUNK_MASK), value);
+    }
+
+    int getInt(long at) {
+        return chunk(at).getInt((int) (at & CHUNK_MASK));
+    }
+
+    void putInt(long at, int value) {
+        chunk(at).putInt((int) (at & CHUNK_MASK), value);
+    }
+
+    long getLong(long at) {
+        return chunk(at).getLong((int) (at & CHUNK_MASK));
+    }
+
+    void putLong(long at, long value) {
+        chunk(at).putLong((int) (at & CHUNK_MASK), value);
+    }
+
+    /**
+     * Copies bytes out of the buffer
+     * @param at the offset of the first byte
+     * @param bytes receives the bytes at..at+bytes.length-1
+     */
+    void get(long at, byte[] bytes) {
+        for (int i = 0; i < bytes.length; ) {
+            int length = (int) Math.min(bytes.length - i, (1L << CHUNK_BITS) - ((at + i) & CHUNK_MASK));
+            chunk(at + i).get((int) ((at + i) & CHUNK_MASK), bytes, i, length);
+            i += length;
+        }
+    }
+
+    /**
+     * Copies bytes into the buffer
+     * @param at the offset of the first byte
+     * @param bytes the bytes to store at at..at+bytes.length-1
+     */
+    void put(long at, byte[] bytes) {
+        for (int i = 0; i < bytes.length; ) {
+            int length = (int) Math.min(bytes.length - i, (1L << CHUNK_BITS) - ((at + i) & CHUNK_MASK));
+            chunk(at + i).put((int) ((at + i) & CHUNK_MASK), bytes, i, length);
+            i += length;
+        }
+    }
+
+    /**
+     * Stores ints one chunk at a time
+     * @param at the offset of the first int, a multiple of 4
+     * @param values the ints
+     * @param count the number of ints of values to store
+     */
+    void putInts(long at, int[] values, int count) {
+        for (int i = 0; i < count; ) {
+            int offset = (int) ((at + 4L * i) & CHUNK_MASK);
+            int length = (int) Math.min(count - i, ((1L << CHUNK_BITS) - offset) / 4);
+            chunk(at + 4L * i).slice(offset, 4 * length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(values, i, length);
+            i += length;
+        }
+    }
+
+    /**
+     * Stores longs one chunk at a time
+     * @param at the offset of the first long, a multiple of 8
+     * @param values the longs, all of which are stored
+     */
+    void putLongs(long at, long[] values) {
+        for (int i = 0; i < values.length; ) {
+            int offset = (int) ((at + 8L * i) & CHUNK_MASK);
+            int length = (int) Math.min(values.length - i, ((1L << CHUNK_BITS) - offset) / 8);
+            chunk(at + 8L * i).slice(offset, 8 * length).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(values, i, length);
+            i += length;
+        }
+    }
+
+    /**
+     * Writes all bytes to a file at its current position
+     * @param channel the open file
+     * @throws IOException if the file cannot be written
+     */
+    void writeTo(FileChannel channel) throws IOException {
+        for (ByteBuffer chunk : this.chunks) {
+            ByteBuffer bytes = chunk.duplicate().clear();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+}
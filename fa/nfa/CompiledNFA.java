@@ -0,0 +1,708 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
+
+/**
+ * An immutable, integer-indexed snapshot of an NFA built by NFA.compile().
+ * States are numbered 0..n-1, and the transition function is stored in flat
+ * compressed-sparse-row arrays instead of per-state maps, so simulation never hashes
+ * boxed Characters or walks HashSets. The columns are not single characters but the
+ * k classes of characters that every state treats alike (see SymbolClasses), numbered
+ * 0..k-1, so ranges over a large alphabet cost one column each.
+ *
+ * Epsilon edges are kept in their own table for closures. Like NFA.accepts, an
+ * input character 'e' follows the epsilon edges as if they were ordinary
+ * transitions, so both forms give the same results on every input.
+ *
+ * A CompiledNFA is never modified after it is built and all of its fields but one are
+ * final, so one instance can be shared by any number of threads without locking. The
+ * exception is the literal prefilter, which is built on first use and published through
+ * a volatile field; two threads may both build it, with equal results.
+ */
+public final class CompiledNFA {
+    static final char EPSILON = 'e';
+
+    final String[] stateNames;
+    private final Map<String, Integer> stateIds;
+    final int start;
+    final long[] finalBits;
+
+    final SymbolMap symbols;
+
+    // targets of (state, symbol) are targets[offsets[state * k + symbol] .. offsets[state * k + symbol + 1])
+    final int[] offsets;
+    final int[] targets;
+
+    // targets of the epsilon edges of state are epsilonTargets[epsilonOffsets[state] .. epsilonOffsets[state + 1])
+    final int[] epsilonOffsets;
+    final int[] epsilonTargets;
+
+    // eClosure(state) is closureTargets[closureOffsets[state] .. closureOffsets[state + 1])
+    final int[] closureOffsets;
+    final int[] closureTargets;
+
+    // closures with more states than a set has words are also stored as bitset rows:
+    // the closure of state is denseClosures[denseRow[state] .. + words) if denseRow[state] >= 0
+    final int[] denseRow;
+    final long[] denseClosures;
+
+    // successor sets of (state, symbol) that are large enough to OR in as a whole row, already closed:
+    // the set reached from row state * k + symbol is denseSuccessors[successorRow[row] .. + words) if
+    // successorRow[row] >= 0; successorRow is null if no row qualifies
+    final int[] successorRow;
+    final long[] denseSuccessors;
+
+    // states from which some final state can still be reached; once none is active, no input is accepted
+    final long[] usefulBits;
+
+    // the single-long engine, used whenever the states fit in one word; null otherwise
+    final BitParallelNFA bitParallel;
+
+    // the single-pointer engine, used whenever the automaton is deterministic; null otherwise
+    final DeterministicNFA deterministic;
+
+    private volatile LiteralPrefilter prefilter; // built by prefilter() on first use
+
+    private CompiledNFA(String[] stateNames, int start, long[] finalBits, SymbolMap symbols,
+            int[] offsets, int[] targets, int[] epsilonOffsets, int[] epsilonTargets) {
+        this.stateNames = stateNames;
+        this.start = start;
+        this.finalBits = finalBits;
+        this.symbols = symbols;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.epsilonOffsets = epsilonOffsets;
+        this.epsilonTargets = epsilonTargets;
+
+        this.stateIds = new HashMap<String, Integer>();
+        for (int i = 0; i < stateNames.length; i++) {
+            this.stateIds.put(stateNames[i], i);
+        }
+
+        // Closures are computed once here so simulation never has to traverse epsilon edges
+        int n = stateNames.length;
+        int[][] closures = EpsilonClosures.compute(n, epsilonOffsets, epsilonTargets);
+        int total = 0;
+        for (int state = 0; state < n; state++) {
+            total += closures[state].length;
+        }
+        this.closureOffsets = new int[n + 1];
+        this.closureTargets = new int[total];
+        for (int state = 0; state < n; state++) {
+            this.closureOffsets[state + 1] = this.closureOffsets[state] + closures[state].length;
+            System.arraycopy(closures[state], 0, this.closureTargets, this.closureOffsets[state], closures[state].length);
+        }
+
+        // One OR of a whole row is cheaper than setting the bits of a closure this big one by one
+        int words = words(n);
+        int rows = 0;
+        for (int state = 0; state < n; state++) {
+            if (closures[state].length > words) {
+                rows++;
+            }
+        }
+        this.denseRow = new int[n];
+        this.denseClosures = new long[rows * words];
+        rows = 0;
+        for (int state = 0; state < n; state++) {
+            this.denseRow[state] = -1;
+            if (closures[state].length > words) {
+                this.denseRow[state] = rows * words;
+                for (int reached : closures[state]) {
+                    this.denseClosures[rows * words + (reached >>> 6)] |= 1L << reached;
+                }
+                rows++;
+            }
+        }
+        int[] successorRow = new int[this.offsets.length - 1];
+        this.denseSuccessors = denseSuccessors(closures, words, successorRow);
+        this.successorRow = this.denseSuccessors.length == 0 ? null : successorRow;
+
+        int[][] graph = stateGraph();
+        boolean[] finals = new boolean[n];
+        for (int state = 0; state < n; state++) {
+            finals[state] = isFinal(state);
+        }
+        boolean[] useful = Reachability.coReachable(graph[0], graph[1], finals);
+        this.usefulBits = new long[words];
+        for (int state = 0; state < n; state++) {
+            if (useful[state]) {
+                this.usefulBits[state >>> 6] |= 1L << state;
+            }
+        }
+        this.bitParallel = n <= BitParallelNFA.MAX_STATES ? new BitParallelNFA(this) : null;
+        this.deterministic = DeterministicNFA.of(this);
+    }
+
+    /**
+     * Views the transitions as a graph of states, for analyses that only care whether an
+     * edge exists. The rows of one state are contiguous, and the 'e' row holds the
+     * epsilon transitions, so the graph is every k-th row offset over the same targets.
+     * @return { offsets, targets } of the graph, where a target may be listed more than once
+     */
+    int[][] stateGraph() {
+        int n = stateCount();
+        int k = symbolCount();
+        int[] graphOffsets = new int[n + 1];
+        for (int state = 0; state <= n; state++) {
+            graphOffsets[state] = this.offsets[state * k];
+        }
+        return new int[][] { graphOffsets, this.targets };
+    }
+
+    /*
+     * Stores the closed successor sets of the (state, symbol) rows that reach more states
+     * than a set has words as bitset rows, so a step ORs them in with one vector loop
+     * instead of adding each target's closure. Like the dense closures, a row only pays
+     * off when it is that full; to keep shallow but wide automata from doubling in size,
+     * no more longs are stored than the targets and closures hold ints. Sets
+     * successorRow[row] to the start of the row of each stored set and to -1 otherwise.
+     */
+    private long[] denseSuccessors(int[][] closures, int words, int[] successorRow) {
+        Arrays.fill(successorRow, -1);
+        long budget = Math.min((long) this.targets.length + this.closureTargets.length, Integer.MAX_VALUE - 8);
+        long[] dense = new long[0];
+        int size = 0;
+        long[] set = new long[words];
+        for (int row = 0; row < successorRow.length && size + words <= budget; row++) {
+            long reached = 0;
+            for (int i = this.offsets[row]; i < this.offsets[row + 1]; i++) {
+                reached += closures[this.targets[i]].length;
+            }
+            if (reached <= words) {
+                continue; // the union cannot be any larger
+            }
+            Arrays.fill(set, 0L);
+            for (int i = this.offsets[row]; i < this.offsets[row + 1]; i++) {
+                for (int state : closures[this.targets[i]]) {
+                    set[state >>> 6] |= 1L << state;
+                }
+            }
+            if (BitsetKernel.KERNEL.popCount(set) > words) {
+                if (size + words > dense.length) {
+                    dense = Arrays.copyOf(dense, (int) Math.min(budget, Math.max(2L * dense.length, size + words)));
+                }
+                System.arraycopy(set, 0, dense, size, words);
+                successorRow[row] = size;
+                size += words;
+            }
+        }
+        return Arrays.copyOf(dense, size);
+    }
+
+    /**
+     * Numbers the given states and flattens their transitions into arrays.
+     * @param states all states of the NFA, in the order they should be numbered
+     * @param startState the start state, or null if none was set
+     * @param finalStates the accepting states
+     * @param alphabet the NFA's Sigma
+     * @return the compiled automaton
+     */
+    static CompiledNFA compile(Collection<NFAState> states, NFAState startState,
+            Set<NFAState> finalStates, CharRanges alphabet) {
+        int n = states.size();
+        String[] names = new String[n];
+        long[] finalBits = new long[words(n)];
+        Map<NFAState, Integer> ids = new HashMap<NFAState, Integer>();
+        for (NFAState state : states) {
+            int id = ids.size();
+            ids.put(state, id);
+            names[id] = state.getName();
+            if (finalStates.contains(state)) {
+                finalBits[id >>> 6] |= 1L << id;
+            }
+        }
+
+        // Symbols are everything in Sigma plus any key actually used by a transition ('e' included).
+        // Every character of a class has the same targets, so its first one stands for all
+        SymbolMap symbols = SymbolClasses.of(states, alphabet);
+        int k = symbols.size();
+        int rows = rows(n, k);
+
+        int[] offsets = new int[rows + 1];
+        int[] epsilonOffsets = new int[n + 1];
+        int[] targets = new int[countTargets(states, symbols)];
+        int[] epsilonTargets = new int[countTargets(states, EPSILON)];
+        int next = 0;
+        int nextEpsilon = 0;
+        for (NFAState state : states) {
+            int id = ids.get(state);
+            for (int sym = 0; sym < k; sym++) {
+                offsets[id * k + sym] = next;
+                next = copyTargets(state.targetsOn(symbols.symbol(sym)), ids, targets, next);
+            }
+            epsilonOffsets[id] = nextEpsilon;
+            nextEpsilon = copyTargets(state.targetsOn(EPSILON), ids, epsilonTargets, nextEpsilon);
+        }
+        offsets[rows] = next;
+        epsilonOffsets[n] = nextEpsilon;
+
+        int start = (startState == null || !ids.containsKey(startState)) ? -1 : ids.get(startState);
+        return new CompiledNFA(names, start, finalBits, symbols, offsets, targets, epsilonOffsets, epsilonTargets);
+    }
+
+    /**
+     * Places several compiled automata side by side in one, without a start state.
+     * The states of parts[i] keep their order and are numbered from the total state count
+     * of the parts before it, and are named i + ":" + their name. No transition connects
+     * two parts, so running the union from the union of the parts' start closures runs
+     * every part at once.
+     * @param parts the automata to combine
+     * @return the combined automaton
+     */
+    static CompiledNFA union(List<CompiledNFA> parts) {
+        int n = 0;
+        for (CompiledNFA part : parts) {
+            n += part.stateCount();
+        }
+        SymbolMap symbols = SymbolClasses.common(parts);
+        int k = symbols.size();
+        int rows = rows(n, k);
+
+        String[] names = new String[n];
+        long[] finalBits = new long[words(n)];
+        int[] offsets = new int[rows + 1];
+        int[] epsilonOffsets = new int[n + 1];
+
+        // The columns of the union may split a class of a part, which then fills several of them
+        int[][] partSyms = new int[parts.size()][k];
+        long targetCount = 0;
+        int epsilonCount = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            CompiledNFA part = parts.get(p);
+            int partK = part.symbolCount();
+            for (int sym = 0; sym < k; sym++) {
+                int partSym = part.symbolId(symbols.symbol(sym));
+                partSyms[p][sym] = partSym;
+                if (partSym >= 0) {
+                    for (int state = 0; state < part.stateCount(); state++) {
+                        int row = state * partK + partSym;
+                        targetCount += part.offsets[row + 1] - part.offsets[row];
+                    }
+                }
+            }
+            epsilonCount += part.epsilonTargets.length;
+        }
+        if (targetCount >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The union has " + targetCount
+                    + " transitions, more than an int can index");
+        }
+        int[] targets = new int[(int) targetCount];
+        int[] epsilonTargets = new int[epsilonCount];
+        int next = 0;
+        int nextEpsilon = 0;
+        int base = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            CompiledNFA part = parts.get(p);
+            int partK = part.symbolCount();
+            for (int state = 0; state < part.stateCount(); state++) {
+                int id = base + state;
+                names[id] = p + ":" + part.stateName(state);
+                if (part.isFinal(state)) {
+                    finalBits[id >>> 6] |= 1L << id;
+                }
+                for (int sym = 0; sym < k; sym++) {
+                    offsets[id * k + sym] = next;
+                    int partSym = partSyms[p][sym];
+                    if (partSym >= 0) {
+                        int row = state * partK + partSym;
+                        for (int i = part.offsets[row]; i < part.offsets[row + 1]; i++) {
+                            targets[next++] = base + part.targets[i];
+                        }
+                    }
+                }
+                epsilonOffsets[id] = nextEpsilon;
+                for (int i = part.epsilonOffsets[state]; i < part.epsilonOffsets[state + 1]; i++) {
+                    epsilonTargets[nextEpsilon++] = base + part.epsilonTargets[i];
+                }
+            }
+            base += part.stateCount();
+        }
+        offsets[rows] = next;
+        epsilonOffsets[n] = nextEpsilon;
+        return new CompiledNFA(names, -1, finalBits, symbols, offsets, targets, epsilonOffsets, epsilonTargets);
+    }
+
+    /**
+     * @return the necessary conditions every accepted string meets, to reject inputs without simulating them
+     */
+    LiteralPrefilter prefilter() {
+        LiteralPrefilter literals = this.prefilter;
+        if (literals == null) {
+            literals = LiteralPrefilter.of(this);
+            this.prefilter = literals;
+        }
+        return literals;
+    }
+
+    /**
+     * Builds the reverse automaton: every transition turned around, the start state as the
+     * only final state and no start state. It accepts the reverse of every string accepted
+     * from the start state into a final state, when it is run from the final states.
+     * It is as large as this automaton and is not kept, so every call builds a new one.
+     * @return the reverse automaton, with the same state and symbol numbers
+     */
+    CompiledNFA reverse() {
+        int n = stateCount();
+        int k = symbolCount();
+        int rows = rows(n, k);
+        int[] reverseOffsets = new int[rows + 1];
+        for (int state = 0; state < n; state++) {
+            for (int sym = 0; sym < k; sym++) {
+                int row = state * k + sym;
+                for (int i = this.offsets[row]; i < this.offsets[row + 1]; i++) {
+                    reverseOffsets[this.targets[i] * k + sym + 1]++;
+                }
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            reverseOffsets[row + 1] += reverseOffsets[row];
+        }
+        // Sources are visited in ascending order, so every reversed row comes out sorted
+        int[] fill = Arrays.copyOf(reverseOffsets, rows);
+        int[] reverseTargets = new int[reverseOffsets[rows]];
+        for (int state = 0; state < n; state++) {
+            for (int sym = 0; sym < k; sym++) {
+                int row = state * k + sym;
+                for (int i = this.offsets[row]; i < this.offsets[row + 1]; i++) {
+                    reverseTargets[fill[this.targets[i] * k + sym]++] = state;
+                }
+            }
+        }
+        int[][] reverseEpsilon = Reachability.reverse(this.epsilonOffsets, this.epsilonTargets);
+
+        long[] reverseFinals = new long[words(n)];
+        if (this.start >= 0) {
+            reverseFinals[this.start >>> 6] |= 1L << this.start;
+        }
+        return new CompiledNFA(this.stateNames, -1, reverseFinals, this.symbols, reverseOffsets, reverseTargets,
+                reverseEpsilon[0], reverseEpsilon[1]);
+    }
+
+    // Number of longs needed for a bitset over n states
+    static int words(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    /**
+     * Computes the number of (state, symbol class) rows of a table, which can only be
+     * indexed by int if the product plus one for the end offset fits in an int
+     * @param n the number of states
+     * @param k the number of symbol classes
+     * @return n * k
+     * @throws IllegalArgumentException if n * k + 1 is larger than Integer.MAX_VALUE
+     */
+    static int rows(int n, int k) {
+        long rows = (long) n * k;
+        if (rows >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(n + " states with " + k + " symbol classes need "
+                    + rows + " table rows, more than an int can index");
+        }
+        return (int) rows;
+    }
+
+    // Number of targets in the rows of all states, one row per symbol class
+    private static int countTargets(Collection<NFAState> states, SymbolMap symbols) {
+        int count = 0;
+        for (NFAState state : states) {
+            for (int sym = 0; sym < symbols.size(); sym++) {
+                NFAState[] dest = state.targetsOn(symbols.symbol(sym));
+                count += dest == null ? 0 : dest.length;
+            }
+        }
+        return count;
+    }
+
+    private static int countTargets(Collection<NFAState> states, char onSymb) {
+        int count = 0;
+        for (NFAState state : states) {
+            NFAState[] dest = state.targetsOn(onSymb);
+            count += dest == null ? 0 : dest.length;
+        }
+        return count;
+    }
+
+    // Writes the ids of dest into out starting at pos, sorted so each row is in ascending order
+    private static int copyTargets(NFAState[] dest, Map<NFAState, Integer> ids, int[] out, int pos) {
+        if (dest == null) {
+            return pos;
+        }
+        int from = pos;
+        for (NFAState state : dest) {
+            out[pos++] = ids.get(state);
+        }
+        Arrays.sort(out, from, pos);
+        return pos;
+    }
+
+    /**
+     * @return the number of states, which are numbered 0..stateCount()-1
+     */
+    public int stateCount() {
+        return this.stateNames.length;
+    }
+
+    /**
+     * @return the number of symbol classes, which are numbered 0..symbolCount()-1
+     */
+    public int symbolCount() {
+        return this.symbols.size();
+    }
+
+    /**
+     * Returns the number of a state
+     * @param name the label of the state
+     * @return the state's number, or -1 if no state has that name
+     */
+    public int stateId(String name) {
+        Integer id = this.stateIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param state a state number
+     * @return the label of the state
+     */
+    public String stateName(int state) {
+        return this.stateNames[state];
+    }
+
+    /**
+     * @return the number of the start state, or -1 if the NFA had none
+     */
+    public int startState() {
+        return this.start;
+    }
+
+    /**
+     * @param state a state number
+     * @return true if the state is accepting
+     */
+    public boolean isFinal(int state) {
+        return (this.finalBits[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * @return true if no state has an epsilon transition or two targets on one symbol,
+     * in which case accepts and maxCopies follow a single state instead of a set
+     */
+    public boolean isDeterministic() {
+        return this.deterministic != null;
+    }
+
+    /**
+     * Maps a character to the number of its symbol class, in O(1)
+     * @param c the input character
+     * @return the class number, or -1 if c is neither in Sigma nor used by any transition
+     */
+    public int symbolId(char c) {
+        return this.symbols.id(c);
+    }
+
+    /**
+     * Lists the characters of a symbol class, which every state treats alike
+     * @param symbol a class number
+     * @return the characters of the class in ascending order
+     */
+    public char[] symbolClass(int symbol) {
+        return this.symbols.members(symbol);
+    }
+
+    /**
+     * Traverses all epsilon transitions from a state
+     * @param state a state number
+     * @return the numbers of all states reachable from state on epsilon transitions (state included), ascending
+     */
+    public int[] eClosure(int state) {
+        return Arrays.copyOfRange(this.closureTargets, this.closureOffsets[state], this.closureOffsets[state + 1]);
+    }
+
+    /**
+     * Simulates the automaton on input s to determine whether it accepts s.
+     * Inputs too short for the automaton, or missing a literal every accepted string has,
+     * are rejected without a simulation. Deterministic automata follow a single state
+     * through a next-state table, and other automata with at most 64 states run with
+     * their active set in a single long.
+     * @param s the input string
+     * @return true if s is in the language of the automaton and false otherwise
+     */
+    public boolean accepts(CharSequence s) {
+        return accepts(s, null);
+    }
+
+    /**
+     * Simulates the automaton on input s, reporting the run to a listener.
+     * @param s the input string
+     * @param listener receives every step and the run's totals, or null for none
+     * @return true if s is in the language of the automaton and false otherwise
+     */
+    public boolean accepts(CharSequence s, SimulationListener listener) {
+        if (listener == null && !NFASimulator.eventsEnabled()) {
+            if (!prefilter().mayAccept(s)) {
+                return false;
+            }
+            if (this.deterministic != null) {
+                return this.deterministic.accepts(s);
+            }
+            return this.bitParallel != null ? this.bitParallel.accepts(s) : new NFASimulator(this).accepts(s);
+        }
+        return new NFASimulator(this).instrumentedRun(s, listener).isAccepted();
+    }
+
+    /**
+     * Determines the maximum number of NFA copies created when processing s
+     * @param s the input string
+     * @return the largest number of simultaneously active states
+     */
+    public int maxCopies(CharSequence s) {
+        return maxCopies(s, null);
+    }
+
+    /**
+     * Determines the maximum number of NFA copies created when processing s, reporting the run to a listener.
+     * @param s the input string
+     * @param listener receives every step and the run's totals, or null for none
+     * @return the largest number of simultaneously active states
+     */
+    public int maxCopies(CharSequence s, SimulationListener listener) {
+        if (listener == null && !NFASimulator.eventsEnabled()) {
+            if (this.deterministic != null) {
+                return this.deterministic.maxCopies(s);
+            }
+            return this.bitParallel != null ? this.bitParallel.maxCopies(s) : new NFASimulator(this).maxCopies(s);
+        }
+        return new NFASimulator(this).instrumentedRun(s, listener).getMaxActive();
+    }
+
+    /**
+     * Finds the first leftmost-longest match in a text: of all substrings starting at or
+     * after from that the automaton accepts, the one that starts first, and of those the longest.
+     * @param text the text to search
+     * @param from the index where the search starts
+     * @return the match, or null if there is none
+     */
+    public MatchSpan find(CharSequence text, int from) {
+        SpanSearch search = new SpanSearch(this, text, from);
+        return search.hasNext() ? search.next() : null;
+    }
+
+    /**
+     * Iterates over the non-overlapping leftmost-longest matches in a text, from left to right.
+     * Each match is the leftmost-longest one starting at or after the end of the previous one;
+     * an empty match right at the end of the previous match is skipped.
+     * @param text the text to search, which must not change while the iterator is used
+     * @return an iterator over the matches' spans
+     */
+    public Iterator<MatchSpan> findAll(CharSequence text) {
+        return new SpanSearch(this, text, 0);
+    }
+
+    /**
+     * Finds all non-overlapping leftmost-longest matches in a text, as findAll does.
+     * @param text the text to search
+     * @return the spans of the matches, from left to right
+     */
+    public List<MatchSpan> search(CharSequence text) {
+        List<MatchSpan> matches = new ArrayList<MatchSpan>();
+        findAll(text).forEachRemaining(matches::add);
+        return matches;
+    }
+
+    /**
+     * Creates a matcher that is fed the input piece by piece instead of all at once.
+     * @return a new Matcher at the start of an empty input
+     */
+    public Matcher matcher() {
+        return new Matcher(this);
+    }
+
+    /**
+     * Determines whether the text of a file is accepted, reading it through a memory
+     * mapping instead of loading it into a String. The file is decoded as UTF-8.
+     * @param file the file to read
+     * @return true if the file's text is in the language of the automaton
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public boolean acceptsFile(Path file) throws IOException {
+        return FileScanner.accepts(this, file);
+    }
+
+    /**
+     * Searches a memory-mapped, UTF-8 file for accepted substrings starting anywhere.
+     * @param file the file to read
+     * @param matchEnds called, in increasing order, with the byte offset just after the end of
+     *        each position where at least one accepted substring ends
+     * @return the number of offsets reported
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public long searchFile(Path file, LongConsumer matchEnds) throws IOException {
+        return FileScanner.search(this, file, matchEnds);
+    }
+
+    /**
+     * Decides whether one long input is accepted, splitting it into chunks that run in
+     * parallel on the common fork-join pool. The result is the same as that of accepts;
+     * inputs too short to be worth splitting are simply run on the calling thread.
+     * @param s the input string
+     * @return true if s is in the language of the automaton and false otherwise
+     */
+    public boolean acceptsParallel(CharSequence s) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return ParallelAcceptance.accepts(this, s, pool, pool.getParallelism());
+    }
+
+    /**
+     * Decides whether one long input is accepted, splitting it into chunks that run in
+     * parallel on the given executor.
+     * @param s the input string
+     * @param executor the executor that runs the chunks
+     * @param parallelism the largest number of chunks to split s into, usually the executor's thread count
+     * @return true if s is in the language of the automaton and false otherwise
+     */
+    public boolean acceptsParallel(CharSequence s, Executor executor, int parallelism) {
+        return ParallelAcceptance.accepts(this, s, executor, parallelism);
+    }
+
+    /**
+     * Runs accepts on every input in parallel on the common fork-join pool.
+     * @param inputs the input strings
+     * @return result[i] is true if inputs.get(i) is accepted
+     */
+    public boolean[] acceptsAll(List<? extends CharSequence> inputs) {
+        return BatchEvaluator.acceptsAll(this, inputs, null);
+    }
+
+    /**
+     * Runs accepts on every input in parallel on the given executor.
+     * @param inputs the input strings
+     * @param executor the executor that runs the work
+     * @return result[i] is true if inputs.get(i) is accepted
+     */
+    public boolean[] acceptsAll(List<? extends CharSequence> inputs, Executor executor) {
+        return BatchEvaluator.acceptsAll(this, inputs, executor);
+    }
+
+    /**
+     * Runs maxCopies on every input in parallel on the common fork-join pool.
+     * @param inputs the input strings
+     * @return result[i] is the maximum number of copies created for inputs.get(i)
+     */
+    public int[] maxCopiesAll(List<? extends CharSequence> inputs) {
+        return BatchEvaluator.maxCopiesAll(this, inputs, null);
+    }
+
+    /**
+     * Runs maxCopies on every input in parallel on the given executor.
+     * @param inputs the input strings
+     * @param executor the executor that runs the work
+     * @return result[i] is the maximum number of copies created for inputs.get(i)
+     */
+    public int[] maxCopiesAll(List<? extends CharSequence> inputs, Executor executor) {
+        return BatchEvaluator.maxCopiesAll(this, inputs, executor);
+    }
+}
@@ -0,0 +1,81 @@
+package fa.nfa;
+
+/**
+ * Runs a CompiledNFA that is deterministic: no epsilon transitions and at most one
+ * target for every state and symbol. A run then has at most one active state, so it is
+ * a single int moved through a flat next-state table, with no sets at all.
+ *
+ * Transitions into states from which no final state can be reached are stored as
+ * missing, so a run stops as soon as it can no longer be accepted. An instance is
+ * immutable and thread-safe.
+ */
+final class DeterministicNFA {
+    private final SymbolMap symbols;
+    private final int symbolCount;
+    private final int start; // -1 if there is none or it is not useful
+    private final boolean reachable; // whether there is a start state at all
+    private final int[] next; // next[state * k + sym] is the only target, or -1
+    private final long[] finalBits;
+
+    private DeterministicNFA(CompiledNFA nfa) {
+        int n = nfa.stateCount();
+        int k = nfa.symbolCount();
+        this.symbols = nfa.symbols;
+        this.symbolCount = k;
+        this.reachable = nfa.start >= 0;
+        this.start = nfa.start >= 0 && isUseful(nfa, nfa.start) ? nfa.start : -1;
+        this.finalBits = nfa.finalBits;
+        int rows = CompiledNFA.rows(n, k);
+        this.next = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            int target = nfa.offsets[row] < nfa.offsets[row + 1] ? nfa.targets[nfa.offsets[row]] : -1;
+            this.next[row] = target >= 0 && isUseful(nfa, target) ? target : -1;
+        }
+    }
+
+    /**
+     * Builds the deterministic engine of an automaton, if it has one
+     * @param nfa the automaton
+     * @return the engine, or null if some state has an epsilon transition or two targets on one symbol
+     */
+    static DeterministicNFA of(CompiledNFA nfa) {
+        if (nfa.epsilonTargets.length > 0) {
+            return null;
+        }
+        int rows = CompiledNFA.rows(nfa.stateCount(), nfa.symbolCount());
+        for (int row = 0; row < rows; row++) {
+            if (nfa.offsets[row + 1] - nfa.offsets[row] > 1) {
+                return null;
+            }
+        }
+        return new DeterministicNFA(nfa);
+    }
+
+    private static boolean isUseful(CompiledNFA nfa, int state) {
+        return (nfa.usefulBits[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * Runs the automaton over all of s from the start state
+     * @param s the input string
+     * @return true if s is accepted
+     */
+    boolean accepts(CharSequence s) {
+        int state = this.start;
+        for (int i = 0; i < s.length() && state >= 0; i++) {
+            int sym = this.symbols.id(s.charAt(i));
+            state = sym < 0 ? -1 : this.next[state * this.symbolCount + sym];
+        }
+        return state >= 0 && (this.finalBits[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * Without epsilon transitions, the start state is the only copy at first and every
+     * step leaves at most one, so the answer does not depend on the input
+     * @param s the input string
+     * @return 1 if there is a start state, 0 otherwise
+     */
+    int maxCopies(CharSequence s) {
+        return this.reachable ? 1 : 0;
+    }
+}
@@ -0,0 +1,114 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Computes the epsilon-closure of every state at once.
+ * The epsilon graph is condensed into strongly connected components with Tarjan's
+ * algorithm. All states of a component have the same closure, and a component's
+ * closure is its own states plus the closures of the components it has edges to.
+ * Tarjan finishes a component only after everything reachable from it, so each
+ * closure is built from already finished ones without searching the graph again.
+ */
+final class EpsilonClosures {
+
+    private EpsilonClosures() {
+    }
+
+    /**
+     * Computes all closures of an epsilon graph given in compressed-sparse-row form
+     * @param n the number of states
+     * @param offsets the epsilon edges of state s are targets[offsets[s] .. offsets[s + 1])
+     * @param targets the edge targets
+     * @return the closure of every state in ascending order; states of one component share the same array
+     */
+    static int[][] compute(int n, int[] offsets, int[] targets) {
+        int[][] closures = new int[n][];
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        int[] sccStack = new int[n];
+        int sccTop = 0;
+        int[] callStack = new int[n];
+        int[] edgePos = new int[n];
+        int callTop = 0;
+        int nextIndex = 0;
+
+        // mark[t] == stamp means t was already added to the closure being built
+        int[] mark = new int[n];
+        int stamp = 0;
+        int[] buffer = new int[n];
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            callStack[callTop++] = root;
+            edgePos[root] = offsets[root];
+            index[root] = low[root] = nextIndex++;
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+
+            while (callTop > 0) {
+                int v = callStack[callTop - 1];
+                if (edgePos[v] < offsets[v + 1]) {
+                    int w = targets[edgePos[v]++];
+                    if (index[w] < 0) {
+                        callStack[callTop++] = w;
+                        edgePos[w] = offsets[w];
+                        index[w] = low[w] = nextIndex++;
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                callTop--;
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+                if (low[v] != index[v]) {
+                    continue;
+                }
+
+                // v is the root of a component: pop its members and build their shared closure
+                stamp++;
+                int size = 0;
+                int bottom = sccTop;
+                do {
+                    int member = sccStack[--bottom];
+                    onStack[member] = false;
+                    mark[member] = stamp;
+                    buffer[size++] = member;
+                } while (sccStack[bottom] != v);
+                for (int i = bottom; i < sccTop; i++) {
+                    int member = sccStack[i];
+                    for (int e = offsets[member]; e < offsets[member + 1]; e++) {
+                        int[] reached = closures[targets[e]];
+                        if (reached == null) {
+                            continue; // an edge inside the component
+                        }
+                        for (int t : reached) {
+                            if (mark[t] != stamp) {
+                                mark[t] = stamp;
+                                buffer[size++] = t;
+                            }
+                        }
+                    }
+                }
+
+                int[] closure = Arrays.copyOf(buffer, size);
+                Arrays.sort(closure);
+                for (int i = bottom; i < sccTop; i++) {
+                    closures[sccStack[i]] = closure;
+                }
+                sccTop = bottom;
+            }
+        }
+        return closures;
+    }
+}
@@ -0,0 +1,109 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds an NFA without epsilon transitions that accepts the same strings.
+ * With E(s) the epsilon-closure of s, the new automaton has a transition from s to t on a
+ * whenever some state of E(s) has one to t, and s is final whenever E(s) holds a final state.
+ * Simulating it never needs a closure, so every step is a plain union of successors.
+ * States that cannot be reached from the start state, or cannot reach a final state, are dropped.
+ */
+final class EpsilonElimination {
+
+    private EpsilonElimination() {
+    }
+
+    /**
+     * Removes the epsilon transitions of a compiled NFA
+     * @param nfa the automaton
+     * @param sigma the alphabet of the result
+     * @return an equivalent NFA with no 'e' transitions and no unreachable or useless states
+     */
+    static NFA apply(CompiledNFA nfa, CharRanges sigma) {
+        NFABuilder builder = new NFABuilder();
+        for (int i = 0; i < sigma.rangeCount(); i++) {
+            builder.addSigmaRange(sigma.lo(i), sigma.hi(i));
+        }
+        int n = nfa.stateCount();
+        int k = nfa.symbolCount();
+        if (nfa.start < 0) {
+            return builder.build();
+        }
+
+        // offsets/targets hold the new transitions in the same (state, symbol) rows as the compiled table
+        int rows = CompiledNFA.rows(n, k);
+        int[] offsets = new int[rows + 1];
+        int[] targets = new int[Math.max(16, nfa.targets.length)];
+        int size = 0;
+        boolean[] finals = new boolean[n];
+        int[] mark = new int[n];
+        int stamp = 0;
+        for (int s = 0; s < n; s++) {
+            int closureStart = nfa.closureOffsets[s];
+            int closureEnd = nfa.closureOffsets[s + 1];
+            for (int i = closureStart; i < closureEnd; i++) {
+                finals[s] |= nfa.isFinal(nfa.closureTargets[i]);
+            }
+
+            for (int sym = 0; sym < k; sym++) {
+                offsets[s * k + sym] = size;
+                if (nfa.symbols.symbol(sym) == CompiledNFA.EPSILON) {
+                    continue;
+                }
+                stamp++;
+                for (int i = closureStart; i < closureEnd; i++) {
+                    int row = nfa.closureTargets[i] * k + sym;
+                    for (int j = nfa.offsets[row]; j < nfa.offsets[row + 1]; j++) {
+                        int t = nfa.targets[j];
+                        if (mark[t] != stamp) {
+                            mark[t] = stamp;
+                            if (size == targets.length) {
+                                targets = Arrays.copyOf(targets, size * 2);
+                            }
+                            targets[size++] = t;
+                        }
+                    }
+                }
+            }
+        }
+        offsets[rows] = size;
+
+        // Rows of one state are contiguous, so the graph ignoring symbols is every k-th offset
+        int[] graphOffsets = new int[n + 1];
+        for (int s = 0; s <= n; s++) {
+            graphOffsets[s] = offsets[s * k];
+        }
+        boolean[] keep = Reachability.live(graphOffsets, targets, nfa.start, finals);
+
+        for (int s = 0; s < n; s++) {
+            if (keep[s]) {
+                builder.addStates(nfa.stateName(s));
+                if (finals[s]) {
+                    builder.setFinal(nfa.stateName(s));
+                }
+            }
+        }
+        builder.setStart(nfa.stateName(nfa.start));
+        // A row stands for every segment of its symbol class, which all get its targets in one call
+        for (int s = 0; s < n; s++) {
+            if (!keep[s]) {
+                continue;
+            }
+            String[][] byClass = new String[k][];
+            for (int sym = 0; sym < k; sym++) {
+                List<String> to = new ArrayList<String>();
+                for (int i = offsets[s * k + sym]; i < offsets[s * k + sym + 1]; i++) {
+                    if (keep[targets[i]]) {
+                        to.add(nfa.stateName(targets[i]));
+                    }
+                }
+                byClass[sym] = to.toArray(new String[0]);
+            }
+            builder.addTransitions(nfa.stateName(s), nfa.symbols, byClass);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,169 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs a CompiledNFA directly over a file mapped into memory with FileChannel.map.
+ * The bytes are decoded as UTF-8 (so plain ASCII works too) straight into the simulator,
+ * one character at a time, and the file is never copied onto the heap. Files larger than
+ * one mapping are processed in consecutive windows.
+ *
+ * Malformed UTF-8 is decoded like a CharsetDecoder set to REPLACE, or new String(bytes, UTF_8):
+ * each maximal ill-formed subpart becomes one U+FFFD. That is a byte that cannot start a
+ * sequence, or a lead byte with the continuation bytes after it that could still have
+ * completed it; the byte that breaks the sequence off starts the next character. As in
+ * the JDK decoder, an encoded surrogate (ED A0..BF xx) is the one exception: it is read
+ * whole and replaced by a single U+FFFD. Code points above U+FFFF are fed as their two
+ * UTF-16 surrogate chars, as they would appear in a String.
+ *
+ * Like NFASimulator.accepts, acceptsFile stops as soon as no state that can still reach a
+ * final state is active, so the rest of the file is neither mapped nor decoded.
+ */
+final class FileScanner {
+    private static final int WINDOW = 1 << 30;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final NFASimulator simulator;
+    private final boolean unanchored;
+    private final LongConsumer matchEnds;
+    private long matches;
+    private boolean rejected; // no continuation can be accepted, so the scan stops
+
+    private FileScanner(CompiledNFA nfa, boolean unanchored, LongConsumer matchEnds) {
+        this.simulator = new NFASimulator(nfa);
+        this.unanchored = unanchored;
+        this.matchEnds = matchEnds;
+    }
+
+    /**
+     * Determines whether the whole content of a file is accepted
+     * @param nfa the automaton
+     * @param file the file to read
+     * @return true if the file's text is in the language of the automaton
+     * @throws IOException if the file cannot be mapped
+     */
+    static boolean accepts(CompiledNFA nfa, Path file) throws IOException {
+        FileScanner scanner = new FileScanner(nfa, false, null);
+        if (!scanner.simulator.keepUseful()) {
+            return false;
+        }
+        scanner.scan(file);
+        return !scanner.rejected && scanner.simulator.isAccepting();
+    }
+
+    /**
+     * Finds every position in a file where some accepted substring ends
+     * @param nfa the automaton
+     * @param file the file to read
+     * @param matchEnds called with the byte offset just after each such substring, in increasing order
+     * @return the number of offsets reported
+     * @throws IOException if the file cannot be mapped
+     */
+    static long search(CompiledNFA nfa, Path file, LongConsumer matchEnds) throws IOException {
+        FileScanner scanner = new FileScanner(nfa, true, matchEnds);
+        scanner.reportIfAccepting(0); // the empty string at the very start
+        scanner.scan(file);
+        return scanner.matches;
+    }
+
+    private void scan(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long base = 0;
+            while (base < size && !this.rejected) {
+                int length = (int) Math.min(WINDOW, size - base);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+                base += decode(buffer, base, length, base + length == size);
+            }
+        }
+    }
+
+    /*
+     * Decodes and runs one window. A sequence cut off by the end of the window is left for
+     * the next window, unless this is the last one. Returns the number of bytes consumed.
+     */
+    private int decode(MappedByteBuffer buffer, long base, int length, boolean last) {
+        int i = 0;
+        while (i < length && !this.rejected) {
+            int lead = buffer.get(i) & 0xFF;
+            if (lead < 0x80) {
+                feed((char) lead, base + i + 1);
+                i++;
+                continue;
+            }
+
+            // The second byte has a narrower range after some leads, which rules out overlong
+            // forms and code points above U+10FFFF
+            int needed;
+            int codePoint;
+            int low = 0x80;
+            int high = 0xBF;
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                needed = 1;
+                codePoint = lead & 0x1F;
+            } else if (lead >= 0xE0 && lead <= 0xEF) {
+                needed = 2;
+                codePoint = lead & 0x0F;
+                low = lead == 0xE0 ? 0xA0 : 0x80;
+            } else if (lead >= 0xF0 && lead <= 0xF4) {
+                needed = 3;
+                codePoint = lead & 0x07;
+                low = lead == 0xF0 ? 0x90 : 0x80;
+                high = lead == 0xF4 ? 0x8F : 0xBF;
+            } else {
+                feed(REPLACEMENT, base + i + 1);
+                i++;
+                continue;
+            }
+            if (i + needed >= length && !last) {
+                break;
+            }
+
+            int read = 1;
+            while (read <= needed && i + read < length) {
+                int next = buffer.get(i + read) & 0xFF;
+                if (next < low || next > high) {
+                    break;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+                low = 0x80;
+                high = 0xBF;
+                read++;
+            }
+            if (read <= needed || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                feed(REPLACEMENT, base + i + read);
+            } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                feed((char) codePoint, base + i + read);
+            } else {
+                this.simulator.step(Character.highSurrogate(codePoint));
+                feed(Character.lowSurrogate(codePoint), base + i + read);
+            }
+            i += read;
+        }
+        return i;
+    }
+
+    // Runs one character that ends at byte offset end
+    private void feed(char c, long end) {
+        this.simulator.step(c);
+        if (this.unanchored) {
+            reportIfAccepting(end);
+        } else if (!this.simulator.keepUseful()) {
+            this.rejected = true;
+        }
+    }
+
+    // In search mode a match may start anywhere, so the start closure is added back at every offset
+    private void reportIfAccepting(long offset) {
+        this.simulator.addStart();
+        if (this.simulator.isAccepting()) {
+            this.matches++;
+            this.matchEnds.accept(offset);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Runs a CompiledNFA as a DFA that is built lazily while inputs are processed.
+ * The first time a set of NFA states is reached it is interned as a DFA state, and
+ * every (DFA state, symbol) step that has been computed once is remembered, so
+ * inputs that revisit the same state sets cost one table lookup per character.
+ *
+ * The cache never grows past its memory budget. When it is full it is flushed
+ * and rebuilt from the current state set. If it fills up again after only a few
+ * characters, the cache is thrashing; the rest of that input is then run on the
+ * plain bitset simulation instead.
+ *
+ * A LazyDFA is not thread-safe, since every run may add to its cache.
+ */
+public final class LazyDFA {
+    private static final int UNKNOWN = -1;
+    // Flushing again within THRASH_FACTOR * capacity characters counts as thrashing
+    private static final int THRASH_FACTOR = 10;
+    // Bits of a DFA state's flags
+    private static final int ACCEPTING = 1;
+    private static final int LIVE = 2; // some final state can still be reached from the set
+
+    private final CompiledNFA nfa;
+    private final NFASimulator simulator;
+    private final int words;
+    private final int symbolCount;
+    private final int maxStates;
+
+    // DFA state d has set sets[d * words .. (d + 1) * words) and successor on symbol y transitions[d * symbolCount + y]
+    private long[] sets;
+    private int[] transitions;
+    private byte[] flags;
+    private int[] sizes;
+    private int stateCount;
+    // open-addressing hash table of DFA state ids + 1 (0 is an empty slot)
+    private int[] slots;
+
+    private int startState;
+    private long sinceFlush; // characters run through the cache since it was last flushed; meaningless before the first flush
+    private long flushes;
+    private long fallbacks;
+
+    /**
+     * Constructor for a lazy DFA over a compiled NFA
+     * @param nfa the automaton to run
+     * @param memoryBudget the largest number of bytes the cache may use
+     */
+    public LazyDFA(CompiledNFA nfa, long memoryBudget) {
+        this.nfa = nfa;
+        this.simulator = new NFASimulator(nfa);
+        this.words = CompiledNFA.words(nfa.stateCount());
+        this.symbolCount = nfa.symbolCount();
+
+        // A DFA state costs its set, its transition row, its flags and two hash slots
+        long bytesPerState = 8L * this.words + 4L * this.symbolCount + 1 + 4 + 2 * 4;
+        this.maxStates = (int) Math.min(Integer.MAX_VALUE / Math.max(this.words, this.symbolCount + 1) / 2,
+                memoryBudget / bytesPerState);
+
+        int capacity = Math.max(1, Math.min(16, this.maxStates));
+        this.sets = new long[capacity * this.words];
+        this.transitions = new int[capacity * this.symbolCount];
+        this.flags = new byte[capacity];
+        this.sizes = new int[capacity];
+        this.slots = new int[tableSize(capacity)];
+        this.startState = UNKNOWN;
+    }
+
+    /**
+     * Simulates the automaton on input s to determine whether it accepts s.
+     * @param s the input string
+     * @return true if s is in the language of the automaton and false otherwise
+     */
+    public boolean accepts(CharSequence s) {
+        return run(s, false) != 0;
+    }
+
+    /**
+     * Determines the maximum number of NFA copies created when processing s
+     * @param s the input string
+     * @return the largest number of simultaneously active NFA states
+     */
+    public int maxCopies(CharSequence s) {
+        return run(s, true);
+    }
+
+    /**
+     * @return how many DFA states are cached right now
+     */
+    public int cachedStates() {
+        return this.stateCount;
+    }
+
+    /**
+     * @return the most DFA states the memory budget allows
+     */
+    public int capacity() {
+        return this.maxStates;
+    }
+
+    /**
+     * @return how many times the cache was full and had to be flushed
+     */
+    public long flushCount() {
+        return this.flushes;
+    }
+
+    /**
+     * @return how many inputs were finished on the NFA simulation because the cache was thrashing
+     */
+    public long fallbackCount() {
+        return this.fallbacks;
+    }
+
+    /*
+     * Runs s through the cache. Returns the largest set size seen if countCopies is set,
+     * and otherwise 1 if s is accepted and 0 if not.
+     */
+    private int run(CharSequence s, boolean countCopies) {
+        this.simulator.reset();
+        if (this.maxStates < 2) {
+            // Not even a state and its successor fit, so the cache can never help
+            return finishOnSimulator(s, 0, countCopies, this.simulator.activeCount());
+        }
+
+        if (this.startState == UNKNOWN) {
+            this.startState = intern(this.simulator.current());
+            if (this.startState == UNKNOWN) {
+                flush();
+                this.startState = intern(this.simulator.current());
+            }
+        }
+        int state = this.startState;
+        int copyMax = this.sizes[state];
+
+        for (int i = 0; i < s.length(); i++) {
+            if (this.sizes[state] == 0 || !countCopies && (this.flags[state] & LIVE) == 0) {
+                // Nothing is active anymore, or nothing active can lead to acceptance
+                break;
+            }
+            int sym = this.nfa.symbolId(s.charAt(i));
+            int next = sym < 0 ? UNKNOWN : this.transitions[state * this.symbolCount + sym];
+
+            if (next == UNKNOWN) {
+                this.simulator.load(this.sets, state * this.words);
+                this.simulator.step(s.charAt(i));
+                next = intern(this.simulator.current());
+
+                if (next == UNKNOWN) {
+                    // Filling up for the first time is not thrashing, however soon it happens
+                    if (this.flushes > 0 && this.sinceFlush < (long) THRASH_FACTOR * this.maxStates) {
+                        this.fallbacks++;
+                        copyMax = Math.max(copyMax, this.simulator.activeCount());
+                        return finishOnSimulator(s, i + 1, countCopies, copyMax);
+                    }
+                    flush();
+                    next = intern(this.simulator.current());
+                } else if (sym >= 0) {
+                    this.transitions[state * this.symbolCount + sym] = next;
+                }
+            }
+
+            state = next;
+            copyMax = Math.max(copyMax, this.sizes[state]);
+            this.sinceFlush++;
+        }
+
+        if (countCopies) {
+            return copyMax;
+        }
+        return (this.flags[state] & ACCEPTING) != 0 ? 1 : 0;
+    }
+
+    // Continues a run from position i with the state set already loaded in the simulator
+    private int finishOnSimulator(CharSequence s, int i, boolean countCopies, int copyMax) {
+        for (; i < s.length(); i++) {
+            this.simulator.step(s.charAt(i));
+            if (countCopies) {
+                copyMax = Math.max(copyMax, this.simulator.activeCount());
+            }
+        }
+        if (countCopies) {
+            return copyMax;
+        }
+        return this.simulator.isAccepting() ? 1 : 0;
+    }
+
+    // Drops every cached DFA state
+    private void flush() {
+        this.flushes++;
+        this.sinceFlush = 0;
+        this.stateCount = 0;
+        this.startState = UNKNOWN;
+        Arrays.fill(this.slots, 0);
+    }
+
+    // Returns the id of the DFA state for set, adding it if needed, or UNKNOWN if the cache is full
+    private int intern(long[] set) {
+        int mask = this.slots.length - 1;
+        for (int i = hash(set) & mask; ; i = (i + 1) & mask) {
+            int id = this.slots[i] - 1;
+            if (id < 0) {
+                if (this.stateCount == this.maxStates) {
+                    return UNKNOWN;
+                }
+                if (this.stateCount == this.flags.length) {
+                    grow();
+                    return intern(set);
+                }
+                id = add(set);
+                this.slots[i] = id + 1;
+                return id;
+            }
+            if (Arrays.equals(this.sets, id * this.words, (id + 1) * this.words, set, 0, this.words)) {
+                return id;
+            }
+        }
+    }
+
+    private int add(long[] set) {
+        int id = this.stateCount++;
+        System.arraycopy(set, 0, this.sets, id * this.words, this.words);
+        Arrays.fill(this.transitions, id * this.symbolCount, (id + 1) * this.symbolCount, UNKNOWN);
+
+        boolean accept = false;
+        boolean useful = false;
+        int size = 0;
+        for (int w = 0; w < this.words; w++) {
+            accept |= (set[w] & this.nfa.finalBits[w]) != 0;
+            useful |= (set[w] & this.nfa.usefulBits[w]) != 0;
+            size += Long.bitCount(set[w]);
+        }
+        this.flags[id] = (byte) ((accept ? ACCEPTING : 0) | (useful ? LIVE : 0));
+        this.sizes[id] = size;
+        return id;
+    }
+
+    // Doubles the storage, up to maxStates, and rebuilds the hash table
+    private void grow() {
+        int capacity = (int) Math.min((long) this.flags.length * 2, this.maxStates);
+        this.sets = Arrays.copyOf(this.sets, capacity * this.words);
+        this.transitions = Arrays.copyOf(this.transitions, capacity * this.symbolCount);
+        this.flags = Arrays.copyOf(this.flags, capacity);
+        this.sizes = Arrays.copyOf(this.sizes, capacity);
+        this.slots = new int[tableSize(capacity)];
+
+        int mask = this.slots.length - 1;
+        long[] set = new long[this.words];
+        for (int id = 0; id < this.stateCount; id++) {
+            System.arraycopy(this.sets, id * this.words, set, 0, this.words);
+            int i = hash(set) & mask;
+            while (this.slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            this.slots[i] = id + 1;
+        }
+    }
+
+    // Smallest power of two that keeps the table at most half full
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+    }
+
+    private static int hash(long[] set) {
+        int h = Arrays.hashCode(set);
+        return h ^ (h >>> 16);
+    }
+}
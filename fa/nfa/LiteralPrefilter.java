@@ -0,0 +1,292 @@
+package fa.nfa;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Cheap necessary conditions for a string to be accepted, found once per automaton:
+ * <ul>
+ * <li>the shortest length of an accepted string,</li>
+ * <li>a literal prefix and a literal suffix that every accepted string has,</li>
+ * <li>a few characters that every accepted string contains.</li>
+ * </ul>
+ * Checking them costs a few comparisons and indexOf scans, so inputs that fail them
+ * are rejected without running the automaton at all. Inputs that pass still have to
+ * be simulated. A search uses the prefix to jump with indexOf to the next place a match
+ * could start, and stops once the rest of the text lacks a literal every match has.
+ *
+ * Since an input 'e' follows epsilon transitions, the 'e' rows take part in the
+ * analysis like the rows of any other symbol.
+ */
+final class LiteralPrefilter {
+    // Longer literals barely reject more, but cost more to compare
+    private static final int MAX_LITERAL = 32;
+    // Every required character is a full scan of inputs that pass the other checks
+    private static final int MAX_REQUIRED = 3;
+
+    private final int minLength; // Integer.MAX_VALUE if nothing is accepted
+    private final String prefix;
+    private final String suffix;
+    private final char[] required;
+
+    private LiteralPrefilter(int minLength, String prefix, String suffix, char[] required) {
+        this.minLength = minLength;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.required = required;
+    }
+
+    /**
+     * Analyzes a compiled automaton
+     * @param nfa the automaton
+     * @return its prefilter
+     */
+    static LiteralPrefilter of(CompiledNFA nfa) {
+        int minLength = minLength(nfa);
+        if (minLength == Integer.MAX_VALUE) {
+            return new LiteralPrefilter(minLength, "", "", new char[0]);
+        }
+
+        NFASimulator forward = new NFASimulator(nfa);
+        String prefix = literal(nfa, forward);
+
+        CompiledNFA reverse = nfa.reverse(); // only needed here, so it is collected once the suffix is known
+        NFASimulator backward = new NFASimulator(reverse);
+        long[] finals = new long[nfa.finalBits.length];
+        for (int state = 0; state < nfa.stateCount(); state++) {
+            if (nfa.isFinal(state)) {
+                for (int reached : reverse.eClosure(state)) {
+                    finals[reached >>> 6] |= 1L << reached;
+                }
+            }
+        }
+        backward.addAll(finals);
+        String suffix = new StringBuilder(literal(reverse, backward)).reverse().toString();
+
+        char[] required = new char[MAX_REQUIRED];
+        int count = 0;
+        for (int sym = 0; sym < nfa.symbolCount() && count < MAX_REQUIRED; sym++) {
+            char c = nfa.symbols.symbol(sym);
+            // A class of several characters only requires one of them, which a single indexOf cannot check
+            if (c != CompiledNFA.EPSILON && nfa.symbols.classSize(sym) == 1 && prefix.indexOf(c) < 0
+                    && suffix.indexOf(c) < 0 && isRequired(nfa, sym)) {
+                required[count++] = c;
+            }
+        }
+        return new LiteralPrefilter(minLength, prefix, suffix, Arrays.copyOf(required, count));
+    }
+
+    /**
+     * Checks whether an input could be accepted
+     * @param s the input string
+     * @return false if s is certainly rejected
+     */
+    boolean mayAccept(CharSequence s) {
+        if (s.length() < this.minLength || !regionMatches(s, 0, this.prefix)
+                || !regionMatches(s, s.length() - this.suffix.length(), this.suffix)) {
+            return false;
+        }
+        for (char c : this.required) {
+            if (indexOf(s, c, 0) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts looking for the places in a text where matches could start
+     * @param text the text
+     * @return the candidates, for a single search that asks for them from left to right
+     */
+    Candidates candidates(CharSequence text) {
+        return new Candidates(text);
+    }
+
+    /**
+     * The next place in a text where a match could start: the next occurrence of the
+     * prefix, provided the suffix and the required characters still occur after it. The
+     * last occurrence found of each of those is kept, so as the places asked for move
+     * right, every part of the text is scanned at most once for each literal.
+     */
+    final class Candidates {
+        private final CharSequence text;
+        private final int[] found; // the last occurrence of the suffix, then of each required character
+
+        private Candidates(CharSequence text) {
+            this.text = text;
+            this.found = new int[1 + LiteralPrefilter.this.required.length];
+            Arrays.fill(this.found, -1);
+        }
+
+        /**
+         * @param from the first index a match may start at, at least the one of the previous call
+         * @return the first index at or after from where a match could start, or -1 if no
+         * substring of the text starting at from or later is accepted
+         */
+        int next(int from) {
+            LiteralPrefilter prefilter = LiteralPrefilter.this;
+            if (this.text.length() - from < prefilter.minLength) {
+                return -1;
+            }
+            if (prefilter.minLength == 0) {
+                return from; // the empty string matches everywhere
+            }
+            int at = indexOf(this.text, prefilter.prefix, from);
+            if (at < 0 || this.text.length() - at < prefilter.minLength) {
+                return -1;
+            }
+            if (this.found[0] < at && (this.found[0] = indexOf(this.text, prefilter.suffix, at)) < 0) {
+                return -1;
+            }
+            for (int i = 0; i < prefilter.required.length; i++) {
+                if (this.found[i + 1] < at && (this.found[i + 1] = indexOf(this.text, prefilter.required[i], at)) < 0) {
+                    return -1;
+                }
+            }
+            return at;
+        }
+    }
+
+    // Fewest symbols on a path from the start to a final state: epsilon edges cost 0, symbols 1
+    private static int minLength(CompiledNFA nfa) {
+        if (nfa.start < 0) {
+            return Integer.MAX_VALUE;
+        }
+        int n = nfa.stateCount();
+        int k = nfa.symbolCount();
+        int[] distance = new int[n];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        distance[nfa.start] = 0;
+        ArrayDeque<Integer> deque = new ArrayDeque<Integer>();
+        deque.add(nfa.start);
+        while (!deque.isEmpty()) {
+            int state = deque.poll();
+            if (nfa.isFinal(state)) {
+                return distance[state]; // 0-1 BFS takes states in order of distance
+            }
+            for (int i = nfa.epsilonOffsets[state]; i < nfa.epsilonOffsets[state + 1]; i++) {
+                int t = nfa.epsilonTargets[i];
+                if (distance[state] < distance[t]) {
+                    distance[t] = distance[state];
+                    deque.addFirst(t);
+                }
+            }
+            for (int i = nfa.offsets[state * k]; i < nfa.offsets[state * k + k]; i++) {
+                int t = nfa.targets[i];
+                if (distance[state] + 1 < distance[t]) {
+                    distance[t] = distance[state] + 1;
+                    deque.addLast(t);
+                }
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /*
+     * Follows the active set for as long as exactly one symbol class leads on from it, that
+     * class is a single character and no final state is active, and returns the characters
+     * passed. Only states that can still reach a final state count, since the others
+     * never belong to an accepting run.
+     */
+    private static String literal(CompiledNFA nfa, NFASimulator simulator) {
+        StringBuilder literal = new StringBuilder();
+        int k = nfa.symbolCount();
+        while (literal.length() < MAX_LITERAL && simulator.keepUseful() && !simulator.isAccepting()) {
+            int only = -1;
+            long[] set = simulator.current();
+            for (int w = 0; w < set.length && only != -2; w++) {
+                long word = set[w];
+                while (word != 0 && only != -2) {
+                    int state = (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    for (int sym = 0; sym < k; sym++) {
+                        if (nfa.offsets[state * k + sym] < nfa.offsets[state * k + sym + 1] && sym != only) {
+                            only = only == -1 ? sym : -2;
+                        }
+                    }
+                }
+            }
+            if (only < 0 || nfa.symbols.classSize(only) > 1) {
+                break;
+            }
+            literal.append(nfa.symbols.symbol(only));
+            simulator.step(nfa.symbols.symbol(only));
+        }
+        return literal.toString();
+    }
+
+    // True if every path from the start to a final state takes a transition on symbol sym
+    private static boolean isRequired(CompiledNFA nfa, int sym) {
+        int n = nfa.stateCount();
+        int k = nfa.symbolCount();
+        boolean[] reached = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        reached[nfa.start] = true;
+        queue[tail++] = nfa.start;
+        for (int head = 0; head < tail; head++) {
+            int state = queue[head];
+            if (nfa.isFinal(state)) {
+                return false;
+            }
+            for (int other = 0; other < k; other++) {
+                int row = state * k + other;
+                for (int i = nfa.offsets[row]; other != sym && i < nfa.offsets[row + 1]; i++) {
+                    if (!reached[nfa.targets[i]]) {
+                        reached[nfa.targets[i]] = true;
+                        queue[tail++] = nfa.targets[i];
+                    }
+                }
+            }
+            for (int i = nfa.epsilonOffsets[state]; i < nfa.epsilonOffsets[state + 1]; i++) {
+                if (!reached[nfa.epsilonTargets[i]]) {
+                    reached[nfa.epsilonTargets[i]] = true;
+                    queue[tail++] = nfa.epsilonTargets[i];
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(CharSequence s, int at, String literal) {
+        if (at < 0 || at + literal.length() > s.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (s.charAt(at + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // String.indexOf for Strings, which the JDK vectorizes; a plain loop for other CharSequences
+    private static int indexOf(CharSequence text, char c, int from) {
+        if (text instanceof String) {
+            return ((String) text).indexOf(c, from);
+        }
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence text, String literal, int from) {
+        if (text instanceof String) {
+            return ((String) text).indexOf(literal, from);
+        }
+        if (literal.isEmpty()) {
+            return from;
+        }
+        for (int i = indexOf(text, literal.charAt(0), from); i >= 0 && i <= text.length() - literal.length();
+                i = indexOf(text, literal.charAt(0), i + 1)) {
+            if (regionMatches(text, i, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,48 @@
+package fa.nfa;
+
+/**
+ * The position of one match found by a search: the substring from getStart()
+ * up to, but not including, getEnd() is accepted by the automaton.
+ */
+public final class MatchSpan {
+    private final int start;
+    private final int end;
+
+    MatchSpan(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the index of the first character of the match
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     * @return the index just after the last character of the match (equal to getStart() for an empty match)
+     */
+    public int getEnd() {
+        return this.end;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof MatchSpan)) {
+            return false;
+        }
+        MatchSpan span = (MatchSpan) other;
+        return this.start == span.start && this.end == span.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.start + this.end;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this.start + ", " + this.end + ")";
+    }
+}
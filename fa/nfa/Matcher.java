@@ -0,0 +1,107 @@
+package fa.nfa;
+
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * Runs an automaton over input that arrives in pieces.
+ * The active state set is kept between calls, so a stream of any length can be checked
+ * for acceptance without ever holding more than the piece being fed. The running
+ * maxCopies is tracked along the way.
+ *
+ * A Matcher belongs to one thread at a time. Create one per stream with
+ * NFA.matcher() or CompiledNFA.matcher().
+ */
+public final class Matcher {
+    private final NFASimulator simulator;
+    private int copyMax;
+    private long position;
+
+    /**
+     * Constructor for a matcher, which starts at the beginning of an empty input
+     * @param nfa the automaton to run
+     */
+    Matcher(CompiledNFA nfa) {
+        this.simulator = new NFASimulator(nfa);
+        reset();
+    }
+
+    /**
+     * Consumes one input character
+     * @param c the next character of the input
+     */
+    public void feed(char c) {
+        this.simulator.step(c);
+        this.copyMax = Math.max(this.copyMax, this.simulator.activeCount());
+        this.position++;
+    }
+
+    /**
+     * Consumes the characters s[from .. to)
+     * @param s holds the next characters of the input
+     * @param from index of the first character to consume
+     * @param to index after the last character to consume
+     */
+    public void feed(CharSequence s, int from, int to) {
+        Objects.checkFromToIndex(from, to, s.length());
+        for (int i = from; i < to; i++) {
+            feed(s.charAt(i));
+        }
+    }
+
+    /**
+     * Consumes every remaining character of buffer, leaving its position at its limit
+     * @param buffer holds the next characters of the input
+     */
+    public void feed(CharBuffer buffer) {
+        if (buffer.hasArray()) {
+            char[] chars = buffer.array();
+            int end = buffer.arrayOffset() + buffer.limit();
+            for (int i = buffer.arrayOffset() + buffer.position(); i < end; i++) {
+                feed(chars[i]);
+            }
+            buffer.position(buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                feed(buffer.get());
+            }
+        }
+    }
+
+    /**
+     * @return true if the input fed so far is accepted
+     */
+    public boolean isAccepting() {
+        return this.simulator.isAccepting();
+    }
+
+    /**
+     * @return the number of NFA copies active right now
+     */
+    public int currentCopies() {
+        return this.simulator.activeCount();
+    }
+
+    /**
+     * @return the maximum number of NFA copies created since the last reset, as maxCopies would report
+     */
+    public int maxCopies() {
+        return this.copyMax;
+    }
+
+    /**
+     * @return the number of characters fed since the last reset
+     */
+    public long position() {
+        return this.position;
+    }
+
+    /**
+     * Starts over as if nothing had been fed
+     */
+    public void reset() {
+        this.simulator.reset();
+        this.copyMax = this.simulator.activeCount();
+        this.position = 0;
+    }
+}
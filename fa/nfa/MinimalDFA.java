@@ -0,0 +1,340 @@
+package fa.nfa;
+
+import java.util.*;
+
+/**
+ * A minimal deterministic automaton equivalent to an NFA, built by NFA.determinize().
+ * The NFA is run through the full subset construction once, then Hopcroft's partition
+ * refinement merges equivalent states. The result is a complete DFA stored as a dense
+ * int[state][symbol] table, so accepts costs one array lookup per character.
+ *
+ * State 0 is the start state. All inputs that can no longer be accepted lead to the
+ * same (dead) state, if there is one.
+ */
+public final class MinimalDFA {
+    private final SymbolMap symbols;
+    private final int[][] table;
+    private final boolean[] accepting;
+
+    private MinimalDFA(SymbolMap symbols, int[][] table, boolean[] accepting) {
+        this.symbols = symbols;
+        this.table = table;
+        this.accepting = accepting;
+    }
+
+    /**
+     * Determinizes and minimizes a compiled NFA
+     * @param nfa the automaton to convert
+     * @return the minimal DFA accepting the same strings
+     */
+    static MinimalDFA of(CompiledNFA nfa) {
+        // Subset construction: every reachable set of NFA states becomes one DFA state
+        int k = nfa.symbolCount();
+        NFASimulator simulator = new NFASimulator(nfa);
+        HashMap<SetKey, Integer> ids = new HashMap<SetKey, Integer>();
+        ArrayList<long[]> sets = new ArrayList<long[]>();
+        ArrayList<int[]> delta = new ArrayList<int[]>();
+
+        long[] startSet = simulator.current().clone();
+        ids.put(new SetKey(startSet), 0);
+        sets.add(startSet);
+        for (int d = 0; d < sets.size(); d++) {
+            int[] row = new int[k];
+            for (int sym = 0; sym < k; sym++) {
+                simulator.load(sets.get(d), 0);
+                simulator.step(nfa.symbols.symbol(sym));
+                SetKey key = new SetKey(simulator.current().clone());
+                Integer target = ids.get(key);
+                if (target == null) {
+                    target = sets.size();
+                    ids.put(key, target);
+                    sets.add(key.set);
+                }
+                row[sym] = target;
+            }
+            delta.add(row);
+        }
+
+        boolean[] accepting = new boolean[sets.size()];
+        for (int d = 0; d < accepting.length; d++) {
+            long[] set = sets.get(d);
+            for (int w = 0; w < set.length; w++) {
+                accepting[d] |= (set[w] & nfa.finalBits[w]) != 0;
+            }
+        }
+        return minimize(nfa.symbols, delta.toArray(new int[0][]), accepting);
+    }
+
+    /*
+     * Hopcroft's algorithm. The partition is kept in one array of states in which
+     * every block is a contiguous range; splitting a block moves its marked states to
+     * the front of the range and makes them a new block.
+     */
+    private static MinimalDFA minimize(SymbolMap symbols, int[][] delta, boolean[] accepting) {
+        int n = delta.length;
+        int k = symbols.size();
+
+        // inverse[sym] lists the predecessors of t on sym in inverse[sym][inverseOffsets[sym][t] .. inverseOffsets[sym][t + 1])
+        int[][] inverseOffsets = new int[k][n + 1];
+        int[][] inverse = new int[k][n];
+        for (int sym = 0; sym < k; sym++) {
+            for (int s = 0; s < n; s++) {
+                inverseOffsets[sym][delta[s][sym] + 1]++;
+            }
+            for (int t = 0; t < n; t++) {
+                inverseOffsets[sym][t + 1] += inverseOffsets[sym][t];
+            }
+            int[] fill = Arrays.copyOf(inverseOffsets[sym], n);
+            for (int s = 0; s < n; s++) {
+                inverse[sym][fill[delta[s][sym]]++] = s;
+            }
+        }
+
+        int[] elements = new int[n];
+        int[] location = new int[n];
+        int[] blockOf = new int[n];
+        int[] blockStart = new int[n + 1];
+        int[] blockEnd = new int[n + 1];
+        int[] marked = new int[n + 1];
+        int blocks = 0;
+
+        // Initial partition: accepting states, then the rest
+        int pos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int from = pos;
+            for (int s = 0; s < n; s++) {
+                if (accepting[s] == (pass == 0)) {
+                    elements[pos] = s;
+                    location[s] = pos++;
+                    blockOf[s] = blocks;
+                }
+            }
+            if (pos > from) {
+                blockStart[blocks] = from;
+                blockEnd[blocks] = pos;
+                blocks++;
+            }
+        }
+
+        int rows = CompiledNFA.rows(n + 1, k);
+        boolean[] waiting = new boolean[rows];
+        int[] worklist = new int[rows];
+        int top = 0;
+        if (blocks == 2) {
+            int smaller = blockEnd[0] - blockStart[0] <= blockEnd[1] - blockStart[1] ? 0 : 1;
+            for (int sym = 0; sym < k; sym++) {
+                worklist[top++] = smaller * k + sym;
+                waiting[smaller * k + sym] = true;
+            }
+        }
+
+        int[] predecessors = new int[n];
+        boolean[] seen = new boolean[n];
+        int[] touched = new int[n];
+        while (top > 0) {
+            int splitter = worklist[--top];
+            waiting[splitter] = false;
+            int block = splitter / k;
+            int sym = splitter % k;
+
+            // Collect every state with a transition on sym into the splitter block
+            int count = 0;
+            for (int i = blockStart[block]; i < blockEnd[block]; i++) {
+                int t = elements[i];
+                for (int j = inverseOffsets[sym][t]; j < inverseOffsets[sym][t + 1]; j++) {
+                    int s = inverse[sym][j];
+                    if (!seen[s]) {
+                        seen[s] = true;
+                        predecessors[count++] = s;
+                    }
+                }
+            }
+
+            // Mark them by moving each to the front of its block
+            int touchedCount = 0;
+            for (int i = 0; i < count; i++) {
+                int s = predecessors[i];
+                seen[s] = false;
+                int b = blockOf[s];
+                if (marked[b] == 0) {
+                    touched[touchedCount++] = b;
+                }
+                int swapPos = blockStart[b] + marked[b]++;
+                int other = elements[swapPos];
+                elements[location[s]] = other;
+                location[other] = location[s];
+                elements[swapPos] = s;
+                location[s] = swapPos;
+            }
+
+            // Split every block that was only partly marked
+            for (int i = 0; i < touchedCount; i++) {
+                int b = touched[i];
+                int split = blockStart[b] + marked[b];
+                marked[b] = 0;
+                if (split == blockEnd[b]) {
+                    continue;
+                }
+
+                int created = blocks++;
+                blockStart[created] = blockStart[b];
+                blockEnd[created] = split;
+                blockStart[b] = split;
+                for (int j = blockStart[created]; j < blockEnd[created]; j++) {
+                    blockOf[elements[j]] = created;
+                }
+
+                for (int y = 0; y < k; y++) {
+                    int add;
+                    if (waiting[b * k + y]) {
+                        add = created;
+                    } else if (blockEnd[created] - blockStart[created] <= blockEnd[b] - blockStart[b]) {
+                        add = created;
+                    } else {
+                        add = b;
+                    }
+                    if (!waiting[add * k + y]) {
+                        waiting[add * k + y] = true;
+                        worklist[top++] = add * k + y;
+                    }
+                }
+            }
+        }
+
+        // Number the blocks breadth-first from the start state's block
+        int[] number = new int[blocks];
+        Arrays.fill(number, -1);
+        int[] order = new int[blocks];
+        int numbered = 0;
+        number[blockOf[0]] = numbered;
+        order[numbered++] = blockOf[0];
+        for (int i = 0; i < numbered; i++) {
+            int representative = elements[blockStart[order[i]]];
+            for (int y = 0; y < k; y++) {
+                int target = blockOf[delta[representative][y]];
+                if (number[target] < 0) {
+                    number[target] = numbered;
+                    order[numbered++] = target;
+                }
+            }
+        }
+
+        int[][] table = new int[numbered][k];
+        boolean[] finals = new boolean[numbered];
+        for (int i = 0; i < numbered; i++) {
+            int representative = elements[blockStart[order[i]]];
+            finals[i] = accepting[representative];
+            for (int y = 0; y < k; y++) {
+                table[i][y] = number[blockOf[delta[representative][y]]];
+            }
+        }
+        return new MinimalDFA(symbols, table, finals);
+    }
+
+    /**
+     * @return the number of DFA states
+     */
+    public int stateCount() {
+        return this.table.length;
+    }
+
+    /**
+     * @return the number of symbol classes, which are the columns of the transition table
+     */
+    public int symbolCount() {
+        return this.symbols.size();
+    }
+
+    /**
+     * @param state a DFA state number
+     * @return true if the state is accepting
+     */
+    public boolean isFinal(int state) {
+        return this.accepting[state];
+    }
+
+    /**
+     * Looks up a single transition
+     * @param state a DFA state number
+     * @param c the input character
+     * @return the next state, or -1 if c is not in the alphabet (no state can accept after it)
+     */
+    public int next(int state, char c) {
+        int sym = this.symbols.id(c);
+        return sym < 0 ? -1 : this.table[state][sym];
+    }
+
+    /**
+     * Runs the DFA on input s to determine whether it accepts s.
+     * @param s the input string
+     * @return true if s is in the language of the DFA and false otherwise
+     */
+    public boolean accepts(CharSequence s) {
+        int state = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int sym = this.symbols.id(s.charAt(i));
+            if (sym < 0) {
+                return false;
+            }
+            state = this.table[state][sym];
+        }
+        return this.accepting[state];
+    }
+
+    /**
+     * Builds an NFA with the same states and transitions, named q0, q1, ...
+     * Its isDFA() is true. The input symbol 'e' (which an NFA can only use for
+     * epsilon transitions) is left out of the result.
+     * @return the DFA as an NFA object
+     */
+    public NFA toNFA() {
+        NFABuilder builder = new NFABuilder();
+        for (int i = 0; i < this.symbols.segmentCount(); i++) {
+            if (this.symbols.segmentLo(i) != CompiledNFA.EPSILON) {
+                builder.addSigmaRange(this.symbols.segmentLo(i), this.symbols.segmentHi(i));
+            }
+        }
+
+        String[] names = new String[stateCount()];
+        for (int state = 0; state < stateCount(); state++) {
+            names[state] = "q" + state;
+            builder.addStates(names[state]);
+            if (this.accepting[state]) {
+                builder.setFinal(names[state]);
+            }
+        }
+        builder.setStart(names[0]);
+
+        // 'e' is a segment of its own, which gets no transitions
+        int epsilon = this.symbols.id(CompiledNFA.EPSILON);
+        for (int state = 0; state < stateCount(); state++) {
+            String[][] byClass = new String[symbolCount()][];
+            for (int sym = 0; sym < symbolCount(); sym++) {
+                byClass[sym] = sym == epsilon ? null : new String[] { names[this.table[state][sym]] };
+            }
+            builder.addTransitions(names[state], this.symbols, byClass);
+        }
+        return builder.build();
+    }
+
+    // A state set usable as a hash key
+    private static final class SetKey {
+        final long[] set;
+        private final int hash;
+
+        SetKey(long[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SetKey && Arrays.equals(this.set, ((SetKey) other).set);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
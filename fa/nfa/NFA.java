@@ -3,7 +3,11 @@ package fa.nfa;
 import fa.nfa.NFAState;
 import fa.nfa.NFAInterface;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
 
 /**
  * Represents a nondeterministic finite automaton (NFA) comprised of NFAState objects and transitions.
@@ -12,30 +16,67 @@ import java.util.*;
  * @author Julia Melchert
  */
 public class NFA implements NFAInterface {
-    private HashSet<Character> alphabet;
-    private HashSet<NFAState> allStates;
-    private HashSet<String> allStateNames;
+    private CharRanges alphabet;
+    private LinkedHashMap<String, NFAState> allStates; // indexed by name, in the order the states were added
     private NFAState startState;
     private HashSet<NFAState> finalStates;
     // transitions are tracked in each individual NFAState
+    private CompiledNFA compiled; // cached result of compile(), cleared whenever the NFA changes
+    private HashMap<NFAState, Set<NFAState>> closures; // cached eClosure results, built on first use
+    private SimulationListener listener; // told about every accepts/maxCopies run, if set
+    // Kept up to date by addTransition, so isDFA() and isComplete() never walk the states
+    private long multiTargetPairs; // (state, symbol) pairs with two or more targets, epsilon excluded
+    private long definedPairs; // (state, symbol) pairs with at least one target, epsilon excluded
+    private int epsilonStates; // states with at least one epsilon transition
 
     // Constructor
     public NFA() {
-        this.alphabet = new HashSet<Character>();
-        this.allStates = new HashSet<NFAState>();
-        this.allStateNames = new HashSet<String>();
+        this.alphabet = new CharRanges();
+        this.allStates = new LinkedHashMap<String, NFAState>();
         this.startState = null;
         this.finalStates = new HashSet<NFAState>();
     }
 
+    /*
+     * Constructor used by NFABuilder, which has already created and validated every part.
+     */
+    NFA(CharRanges alphabet, LinkedHashMap<String, NFAState> allStates, NFAState startState, HashSet<NFAState> finalStates) {
+        this.alphabet = alphabet;
+        this.allStates = allStates;
+        this.startState = startState;
+        this.finalStates = finalStates;
+        for (NFAState state : allStates.values()) {
+            for (int i = 0; i < state.rangeCount(); i++) {
+                long symbols = state.rangeHi(i) - state.rangeLo(i) + 1;
+                if (state.rangeLo(i) <= 'e' && 'e' <= state.rangeHi(i)) {
+                    this.epsilonStates++;
+                    symbols--;
+                }
+                this.definedPairs += symbols;
+                this.multiTargetPairs += state.targetsAt(i).length >= 2 ? symbols : 0;
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
 	public void addSigma(char symbol) {
-        this.alphabet.add(symbol);
+        this.alphabet.add(symbol, symbol);
+        this.compiled = null;
     }
 	
+    /**
+     * Adds every character from first to last to Sigma
+     * @param first the smallest character of the range
+     * @param last the largest character of the range
+     */
+    public void addSigma(char first, char last) {
+        this.alphabet.add(first, last);
+        this.compiled = null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -44,14 +85,26 @@ public class NFA implements NFAInterface {
         return this.alphabet;
     }
 
+    // Sigma as ranges, for the classes of this package that copy it
+    CharRanges sigmaRanges() {
+        return this.alphabet;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
 	public boolean addState(String name) {
-        // If the name can be added to the set, it is added
-        if (this.allStateNames.add(name) == true) {
-            this.allStates.add(new NFAState(name));
+        // If no state has the name yet, a new state is added under it
+        if (!this.allStates.containsKey(name)) {
+            NFAState state = new NFAState(name);
+            this.allStates.put(name, state);
+            this.compiled = null;
+
+            // A new state has no epsilon edges yet, so its closure is just itself
+            if (this.closures != null) {
+                this.closures.put(state, Collections.unmodifiableSet(new HashSet<NFAState>(Set.of(state))));
+            }
             return true;
         }
 
@@ -64,14 +117,8 @@ public class NFA implements NFAInterface {
      */
     @Override
 	public NFAState getState(String name) {
-        // Iterate through all states and if the name matches, return the object
-        for (NFAState state : this.allStates) {
-            if (state.getName() == name) {
-                return state;
-            }
-        }
-
-        return null;
+        // Looks the name up in the index, which returns null if no state has it
+        return this.allStates.get(name);
     }
 
     /**
@@ -80,8 +127,10 @@ public class NFA implements NFAInterface {
     @Override
 	public boolean setStart(String name) {
         // If the state name exists, updates the start state
-        if (this.allStateNames.contains(name)) {
-            this.startState = this.getState(name);
+        NFAState state = this.getState(name);
+        if (state != null) {
+            this.startState = state;
+            this.compiled = null;
             return true;
         }
 
@@ -95,8 +144,10 @@ public class NFA implements NFAInterface {
     @Override
 	public boolean setFinal(String name) {
         // If the state name exists, updates the final state set
-        if (this.allStateNames.contains(name)) {
-            this.finalStates.add(this.getState(name));
+        NFAState state = this.getState(name);
+        if (state != null) {
+            this.finalStates.add(state);
+            this.compiled = null;
             return true;
         }
 
@@ -113,11 +164,7 @@ public class NFA implements NFAInterface {
             return false;
         }
 
-        if (this.startState.getName() == name) {
-            return true;
-        }
-
-        return false;
+        return this.startState.getName().equals(name);
     }
 	
     /**
@@ -125,15 +172,8 @@ public class NFA implements NFAInterface {
      */
     @Override
 	public boolean isFinal(String name) {
-        // Iterate through all final states and if one has the given name, return true
-        for (NFAState state : this.finalStates) {
-            if (state.getName() == name) {
-                return true;
-            }
-        }
-
-        // None of the final states have the given name, so return false
-        return false;
+        // A name with no state maps to null, which is never in the final state set
+        return this.finalStates.contains(this.getState(name));
     }
 
     /**
@@ -142,44 +182,115 @@ public class NFA implements NFAInterface {
     @Override
 	public boolean addTransition(String fromState, Set<String> toStates, char onSymb) {
         // Check if the fromState does not exist
-        if (!this.allStateNames.contains(fromState)) {
+        NFAState from = this.getState(fromState);
+        if (from == null) {
             return false;
         }
 
-        // Check if any of the toStates do not exist
+        // Check if the symbol is not in the alphabet (and it's not an epsilon)
+        if (!this.alphabet.contains(onSymb) && onSymb != 'e') {
+            return false;
+        }
+
+        // Create set of NFAStates based on strings in toStates, failing if any of them do not exist
+        HashSet<NFAState> destStates = new HashSet<NFAState>();
         for (String stateName : toStates) {
-            if (!this.allStateNames.contains(stateName)) {
+            NFAState dest = this.getState(stateName);
+            if (dest == null) {
                 return false;
             }
+            destStates.add(dest);
         }
-        
-        // Check if the symbol is not in the alphabet (and it's not an epsilon)
-        if (!this.alphabet.contains(onSymb) && onSymb != 'e') {
-            return false;
+
+        // Ensured valid inputs, so pass set of NFAStates to NFAState method to add transitions
+        if (onSymb == 'e' && this.closures != null) {
+            updateClosures(from, destStates);
         }
+        int before = from.targetCount(onSymb);
+        from.addTransition(destStates, onSymb);
+        countTargets(onSymb, before, from.targetCount(onSymb));
+        this.compiled = null;
+        return true;
+    }
 
-        // Ensured valid inputs, so proceed with adding the transition(s)
+    // Updates the determinism counters for a (state, symbol) pair that went from before to after targets
+    private void countTargets(char onSymb, int before, int after) {
+        if (onSymb == 'e') {
+            this.epsilonStates += before == 0 && after > 0 ? 1 : 0;
+        } else {
+            this.definedPairs += before == 0 && after > 0 ? 1 : 0;
+            this.multiTargetPairs += before < 2 && after >= 2 ? 1 : 0;
+        }
+    }
 
-        // Create set of NFAStates based on strings in toStates
+    /**
+     * Adds transitions from one state to a set of states on every symbol of Sigma from
+     * first to last, such as 'a' to 'z'. The symbol 'e' is left out of the range, since a
+     * transition on it is an epsilon transition. However many symbols the range spans,
+     * the compiled automaton gets one column for all symbols that end up treated alike.
+     * @param fromState the name of the state where the transitions start
+     * @param toStates the names of the states where they end
+     * @param first the smallest symbol of the range
+     * @param last the largest symbol of the range
+     * @return true if the states exist and the range holds a symbol of Sigma, false otherwise
+     */
+    public boolean addTransition(String fromState, Set<String> toStates, char first, char last) {
+        NFAState from = this.getState(fromState);
+        if (from == null) {
+            return false;
+        }
         HashSet<NFAState> destStates = new HashSet<NFAState>();
         for (String stateName : toStates) {
-            destStates.add(this.getState(stateName));
+            NFAState dest = this.getState(stateName);
+            if (dest == null) {
+                return false;
+            }
+            destStates.add(dest);
+        }
+        CharRanges symbols = symbolsBetween(this.alphabet, first, last);
+        if (symbols.isEmpty()) {
+            return false;
+        }
+        if (destStates.isEmpty()) {
+            return true;
         }
 
-        // Pass set of NFAStates to NFAState method to add transitions
-        this.getState(fromState).addTransition(destStates, onSymb);
+        // All ranges share one target array, merged into the state in a single pass.
+        // The counters change by the symbols of the ranges that gain a first or second target.
+        long defined = 0;
+        long multiTarget = 0;
+        for (int i = 0; i < symbols.rangeCount(); i++) {
+            defined -= from.symbolsWithTargets(symbols.lo(i), symbols.hi(i), 1);
+            multiTarget -= from.symbolsWithTargets(symbols.lo(i), symbols.hi(i), 2);
+        }
+        NFAState[][] targets = new NFAState[symbols.rangeCount()][];
+        Arrays.fill(targets, destStates.toArray(new NFAState[0]));
+        from.addTransitions(symbols.los(), symbols.his(), targets);
+        for (int i = 0; i < symbols.rangeCount(); i++) {
+            defined += from.symbolsWithTargets(symbols.lo(i), symbols.hi(i), 1);
+            multiTarget += from.symbolsWithTargets(symbols.lo(i), symbols.hi(i), 2);
+        }
+        this.definedPairs += defined;
+        this.multiTargetPairs += multiTarget;
+        this.compiled = null;
         return true;
     }
 
+    /*
+     * Returns the symbols of Sigma from first to last, except 'e', as ranges.
+     */
+    static CharRanges symbolsBetween(CharRanges alphabet, char first, char last) {
+        CharRanges symbols = alphabet.between(first, last);
+        symbols.remove(CompiledNFA.EPSILON);
+        return symbols;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
 	public Set<NFAState> getToState(NFAState from, char onSymb) {
-        Set<NFAState> result = new HashSet<>();
-        if(from.transitions.containsKey(onSymb)) {
-            result.addAll(from.transitions.get(onSymb));
-        }
+        Set<NFAState> result = new HashSet<>(from.getTransitions(onSymb));
 
         result.addAll(eClosure(from)); 
         return result;
@@ -190,66 +301,99 @@ public class NFA implements NFAInterface {
      */
     @Override
 	public Set<NFAState> eClosure(NFAState s) {
-        // Uses depth-first search (DFS)
-        Set<NFAState> closure = new HashSet<>();
-        Stack<NFAState> stack = new Stack<>();
-        if (!this.allStates.contains(s)) {
-            return closure;
+        // All closures are computed together the first time one is needed and kept up to date afterwards
+        if (this.closures == null) {
+            this.closures = computeClosures();
         }
-        stack.push(s);
-        closure.add(s);
-        
-        while (!stack.isEmpty()) {
-            NFAState current = stack.pop();
-            //Check epsilon transitions
-            if (current.transitions.containsKey('e')) {
-                for (NFAState nextState : current.transitions.get('e')) {
-                    if (!closure.contains(nextState)) {
-                        stack.push(nextState);
-                        closure.add(nextState);
-                    }
 
-                }
-            }
+        Set<NFAState> closure = this.closures.get(s);
+        if (closure == null) {
+            return Collections.emptySet();
         }
-        
         return closure;
     }
 
-    /**
-     * {@inheritDoc}
+    /*
+     * Computes every state's epsilon-closure in one pass over the epsilon graph.
+     * States that can reach each other on epsilon edges have the same closure, so they
+     * share a single unmodifiable set.
      */
-    @Override
-	public boolean accepts(String s) {
-        // Performs BFS
-
-        Set<NFAState> currentStates = eClosure(startState);
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            Set<NFAState> nextStates = new HashSet<>();
-
-            // For every starting state, check if there's a transition for the current character 
-            for (NFAState state : currentStates) {
-                if (state.transitions.containsKey(c)) {
-                    // If there is a transition on the current character, add all possible destinations to a set
-                    for (NFAState targetState : state.transitions.get(c)) {
-                        nextStates.addAll(eClosure(targetState));
-                    }
+    private HashMap<NFAState, Set<NFAState>> computeClosures() {
+        NFAState[] states = this.allStates.values().toArray(new NFAState[0]);
+        HashMap<NFAState, Integer> ids = new HashMap<NFAState, Integer>();
+        for (int i = 0; i < states.length; i++) {
+            ids.put(states[i], i);
+        }
+
+        // Number the epsilon edges the way EpsilonClosures expects them
+        int[] offsets = new int[states.length + 1];
+        ArrayList<Integer> targets = new ArrayList<Integer>();
+        for (int i = 0; i < states.length; i++) {
+            for (NFAState target : states[i].getTransitions('e')) {
+                targets.add(ids.get(target));
+            }
+            offsets[i + 1] = targets.size();
+        }
+        int[] targetIds = new int[targets.size()];
+        for (int i = 0; i < targetIds.length; i++) {
+            targetIds[i] = targets.get(i);
+        }
+
+        int[][] closureIds = EpsilonClosures.compute(states.length, offsets, targetIds);
+        HashMap<NFAState, Set<NFAState>> result = new HashMap<NFAState, Set<NFAState>>();
+        IdentityHashMap<int[], Set<NFAState>> shared = new IdentityHashMap<int[], Set<NFAState>>();
+        for (int i = 0; i < states.length; i++) {
+            Set<NFAState> closure = shared.get(closureIds[i]);
+            if (closure == null) {
+                HashSet<NFAState> members = new HashSet<NFAState>();
+                for (int id : closureIds[i]) {
+                    members.add(states[id]);
                 }
+                closure = Collections.unmodifiableSet(members);
+                shared.put(closureIds[i], closure);
             }
+            result.put(states[i], closure);
+        }
+        return result;
+    }
 
-            // Update the set of states we still need to look through with the last iteration's destinations
-            currentStates = nextStates;
+    /*
+     * Updates the cached closures for new epsilon edges from -> destStates.
+     * Only states whose closure contains from can reach the new edge, and each of those
+     * gains exactly the closures of destStates, so every other entry is left untouched.
+     */
+    private void updateClosures(NFAState from, Set<NFAState> destStates) {
+        HashSet<NFAState> added = new HashSet<NFAState>();
+        for (NFAState dest : destStates) {
+            added.addAll(this.closures.get(dest));
         }
-        
-        // Return true if at least one of the destination states is a final state 
-        for (NFAState state : currentStates) {
-            if (finalStates.contains(state)) {
-                return true;
+
+        // States that shared a closure before the edge still share one afterwards
+        IdentityHashMap<Set<NFAState>, Set<NFAState>> replaced = new IdentityHashMap<Set<NFAState>, Set<NFAState>>();
+        for (Map.Entry<NFAState, Set<NFAState>> entry : this.closures.entrySet()) {
+            Set<NFAState> closure = entry.getValue();
+            if (!closure.contains(from) || closure.containsAll(added)) {
+                continue;
             }
+
+            Set<NFAState> updated = replaced.get(closure);
+            if (updated == null) {
+                HashSet<NFAState> members = new HashSet<NFAState>(closure);
+                members.addAll(added);
+                updated = Collections.unmodifiableSet(members);
+                replaced.put(closure, updated);
+            }
+            entry.setValue(updated);
         }
+    }
 
-        return false;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+	public boolean accepts(String s) {
+        // Runs the bitset simulation on the compiled form, which allocates nothing per character
+        return this.compile().accepts(s, this.listener);
     }
 	
 
@@ -258,62 +402,233 @@ public class NFA implements NFAInterface {
      */
     @Override
 	public int maxCopies(String s) {
-        // Follows similar process as accepts, but keeps track of max copies while performing BFS
-
-        // Find all possible start states by using the eClosure of the start state
-        Set<NFAState> currentStates = eClosure(startState);
-
-        // Initialize variable to hold the max number of copies through all iterations
-        int copyMax = currentStates.size();
-
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            Set<NFAState> nextStates = new HashSet<>();
-
-            // For every starting state, check if there's a transition for the current character 
-            for (NFAState state : currentStates) {
-                if (state.transitions.containsKey(c)) {
-                    // If there is a transition on the current character, add all possible destinations to a set
-                    for (NFAState targetState : state.transitions.get(c)) {
-                        nextStates.addAll(eClosure(targetState));
-                    }
-
-                    // Update the max copy tracker if more states can be reached than before
-                    if (nextStates.size() > copyMax) {
-                        copyMax = nextStates.size();
-                    }
-                }
-            }
-
-            // Update the set of states we still need to look through with the last iteration's destinations
-            currentStates = nextStates;
-        }
-
-        return copyMax;
+        // Same simulation as accepts, but counts the active states after every step
+        return this.compile().maxCopies(s, this.listener);
     }
 	
     /**
      * {@inheritDoc}
+     * Takes O(1) time: the pairs of a state and a symbol with several targets and the
+     * states with epsilon transitions are counted as transitions are added. A symbol a
+     * state has no transition on counts as a transition to a dead state, so the result
+     * does not require isComplete(). Automata for which this is true are run by
+     * following a single state instead of a set.
      */
     @Override
 	public boolean isDFA() {
-        if (allStates.isEmpty()) {
-            return false;
-        }
+        return !this.allStates.isEmpty() && this.multiTargetPairs == 0 && this.epsilonStates == 0;
+    }
 
-        for (NFAState state : allStates) {
-            for (char symbol : alphabet) {
-                if (state.transitions.containsKey(symbol)) {
-                    if (state.transitions.get(symbol).size() > 1) return false;
-                }
-            }
+    /**
+     * Determines whether every state has a transition on every symbol of Sigma other
+     * than 'e', in O(1) time
+     * @return true if the transition function is total
+     */
+    public boolean isComplete() {
+        int symbols = this.alphabet.size() - (this.alphabet.contains('e') ? 1 : 0);
+        return this.definedPairs == (long) this.allStates.size() * symbols;
+    }
 
-            //Check for epsilon
-            if (state.transitions.containsKey('e')) {
-                if (!state.transitions.get('e').isEmpty()) return false;
-            }
+    /**
+     * Freezes the current NFA into an immutable, integer-indexed CompiledNFA.
+     * The result is cached until the next addSigma, addState, setStart, setFinal or
+     * addTransition call, so repeated calls on an unchanged NFA are free.
+     * Transitions added directly through NFAState.addTransition are not tracked, here
+     * or by isDFA().
+     * @return a CompiledNFA with the same accepts, maxCopies and eClosure results
+     */
+    public CompiledNFA compile() {
+        if (this.compiled == null) {
+            this.compiled = CompiledNFA.compile(this.allStates.values(), this.startState, this.finalStates, this.alphabet);
         }
-        return true;
+        return this.compiled;
+    }
+
+    /**
+     * Creates a lazily built DFA for the current NFA. DFA states are added to its cache
+     * as inputs reach them, so repeated inputs skip the set unions and closures.
+     * The returned object keeps running the NFA as it was when this was called.
+     * @param memoryBudget the largest number of bytes the DFA's cache may use
+     * @return a new LazyDFA, which must not be shared between threads
+     */
+    public LazyDFA lazyDFA(long memoryBudget) {
+        return new LazyDFA(this.compile(), memoryBudget);
+    }
+
+    /**
+     * Converts the NFA into the minimal DFA for the same language, using the subset
+     * construction followed by Hopcroft's minimization. This can take time and memory
+     * exponential in the number of states, so it is meant for automata that are built
+     * once and then run for a long time.
+     * @return a MinimalDFA accepting exactly the strings this NFA accepts
+     */
+    public MinimalDFA determinize() {
+        return MinimalDFA.of(this.compile());
+    }
+
+    /**
+     * Copies the NFA's transition table into memory outside the Java heap. The copy keeps
+     * the state numbers of compile() and does not change when this NFA does.
+     * @return an OffHeapNFA accepting exactly the strings this NFA accepts
+     */
+    public OffHeapNFA offHeap() {
+        return OffHeapNFA.of(this.compile());
+    }
+
+    /**
+     * Creates a matcher that is fed the input piece by piece, for inputs too large to
+     * hold as a String. It keeps running the NFA as it was when this was called.
+     * @return a new Matcher at the start of an empty input
+     */
+    public Matcher matcher() {
+        return this.compile().matcher();
+    }
+
+    /**
+     * Finds the first leftmost-longest match in a text: of all substrings starting at or
+     * after from that the NFA accepts, the one that starts first, and of those the longest.
+     * @param text the text to search
+     * @param from the index where the search starts
+     * @return the match, or null if there is none
+     */
+    public MatchSpan find(CharSequence text, int from) {
+        return this.compile().find(text, from);
+    }
+
+    /**
+     * Iterates over the non-overlapping leftmost-longest matches in a text without
+     * creating substrings. Each match starts at or after the end of the previous one.
+     * @param text the text to search, which must not change while the iterator is used
+     * @return an iterator over the matches' spans
+     */
+    public Iterator<MatchSpan> findAll(CharSequence text) {
+        return this.compile().findAll(text);
+    }
+
+    /**
+     * Finds all non-overlapping leftmost-longest matches in a text
+     * @param text the text to search
+     * @return the spans of the matches, from left to right
+     */
+    public List<MatchSpan> search(CharSequence text) {
+        return this.compile().search(text);
+    }
+
+    /**
+     * Determines whether the text of a file is accepted. The file is memory-mapped and
+     * decoded as UTF-8 on the fly, so it is never copied into a String.
+     * @param file the file to read
+     * @return true if the file's text is in the language of the NFA
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public boolean acceptsFile(Path file) throws IOException {
+        return this.compile().acceptsFile(file);
+    }
+
+    /**
+     * Searches a memory-mapped, UTF-8 file for substrings the NFA accepts.
+     * @param file the file to read
+     * @param matchEnds called with the byte offset where each match ends, in increasing order
+     * @return the number of offsets reported
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public long searchFile(Path file, LongConsumer matchEnds) throws IOException {
+        return this.compile().searchFile(file, matchEnds);
+    }
+
+    /**
+     * Decides whether one long input is accepted, splitting it into chunks that run in
+     * parallel on the common fork-join pool. Gives the same result as accepts.
+     * @param s the input string
+     * @return true if s is in the language of the NFA and false otherwise
+     */
+    public boolean acceptsParallel(CharSequence s) {
+        return this.compile().acceptsParallel(s);
+    }
+
+    /**
+     * Decides whether one long input is accepted, splitting it into chunks that run in
+     * parallel on the given executor. Gives the same result as accepts.
+     * @param s the input string
+     * @param executor the executor that runs the chunks
+     * @param parallelism the largest number of chunks to split s into
+     * @return true if s is in the language of the NFA and false otherwise
+     */
+    public boolean acceptsParallel(CharSequence s, Executor executor, int parallelism) {
+        return this.compile().acceptsParallel(s, executor, parallelism);
+    }
+
+    /**
+     * Runs accepts on every input in parallel. The NFA is compiled first on the calling
+     * thread and the workers only read the compiled copy, but the NFA itself must not be
+     * changed while this runs.
+     * @param inputs the input strings
+     * @return result[i] is true if inputs.get(i) is accepted
+     */
+    public boolean[] acceptsAll(List<String> inputs) {
+        return this.compile().acceptsAll(inputs);
+    }
+
+    /**
+     * Runs accepts on every input in parallel on the given executor.
+     * @param inputs the input strings
+     * @param executor the executor that runs the work
+     * @return result[i] is true if inputs.get(i) is accepted
+     */
+    public boolean[] acceptsAll(List<String> inputs, Executor executor) {
+        return this.compile().acceptsAll(inputs, executor);
+    }
+
+    /**
+     * Runs maxCopies on every input in parallel, compiling first like acceptsAll.
+     * @param inputs the input strings
+     * @return result[i] is the maximum number of copies created for inputs.get(i)
+     */
+    public int[] maxCopiesAll(List<String> inputs) {
+        return this.compile().maxCopiesAll(inputs);
+    }
+
+    /**
+     * Runs maxCopies on every input in parallel on the given executor.
+     * @param inputs the input strings
+     * @param executor the executor that runs the work
+     * @return result[i] is the maximum number of copies created for inputs.get(i)
+     */
+    public int[] maxCopiesAll(List<String> inputs, Executor executor) {
+        return this.compile().maxCopiesAll(inputs, executor);
+    }
+
+    /**
+     * Sets a listener that is told the active-set size at every step and the totals of every
+     * accepts and maxCopies run. Runs are only instrumented while a listener is set or JFR
+     * is recording the fa.nfa.Simulation event.
+     * @param listener the listener, or null to remove it
+     */
+    public void setSimulationListener(SimulationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Builds an equivalent NFA with no epsilon transitions. Each state's epsilon-closure
+     * is folded into its transitions on the other symbols and into whether it is final,
+     * and states that are unreachable or cannot reach a final state are left out.
+     * The result accepts the same strings over Sigma, though its maxCopies counts differ,
+     * and the input character 'e' no longer follows the removed epsilon transitions.
+     * @return a new NFA with the same alphabet and state names
+     */
+    public NFA removeEpsilons() {
+        return EpsilonElimination.apply(this.compile(), this.alphabet);
+    }
+
+    /**
+     * Builds an NFA without the states that can never take part in an accepting run:
+     * those that cannot be reached from the start state, and those from which no final
+     * state can be reached. The start state is always kept. The result accepts the same
+     * strings, and its maxCopies counts can only be smaller.
+     * @return a new NFA with the same alphabet and the names of the remaining states
+     */
+    public NFA trim() {
+        return Trim.apply(this.compile(), this.alphabet);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,300 @@
+package fa.nfa;
+
+import java.util.*;
+
+/**
+ * Builds an NFA from states, final states and transitions given in batches.
+ * Every name is looked up in a hash index once, so building an NFA with n states and
+ * m transitions takes O(n + m) time, and no per-call sets are created for single edges.
+ *
+ * Unlike the NFA methods, which return false for bad input, the builder throws an
+ * IllegalArgumentException as soon as it is given an unknown state name or a symbol
+ * that is not in Sigma, so the symbols must be added before the transitions using them.
+ * A builder produces one NFA; it cannot be used after build().
+ */
+public class NFABuilder {
+    private CharRanges alphabet;
+    private LinkedHashMap<String, NFAState> states;
+    private NFAState startState;
+    private HashSet<NFAState> finalStates;
+
+    // Constructor
+    public NFABuilder() {
+        this.alphabet = new CharRanges();
+        this.states = new LinkedHashMap<String, NFAState>();
+        this.finalStates = new HashSet<NFAState>();
+    }
+
+    /**
+     * Adds symbols to Sigma
+     * @param symbols the symbols to add
+     * @return this builder
+     */
+    public NFABuilder addSigma(char... symbols) {
+        checkNotBuilt();
+        for (char symbol : symbols) {
+            this.alphabet.add(symbol, symbol);
+        }
+        return this;
+    }
+
+    /**
+     * Adds every character from first to last to Sigma
+     * @param first the smallest character of the range
+     * @param last the largest character of the range
+     * @return this builder
+     */
+    public NFABuilder addSigmaRange(char first, char last) {
+        checkNotBuilt();
+        this.alphabet.add(first, last);
+        return this;
+    }
+
+    /**
+     * Adds states; names that already have a state are skipped
+     * @param names the labels of the new states
+     * @return this builder
+     */
+    public NFABuilder addStates(Collection<String> names) {
+        checkNotBuilt();
+        for (String name : names) {
+            this.states.computeIfAbsent(name, NFAState::new);
+        }
+        return this;
+    }
+
+    /**
+     * Adds states; names that already have a state are skipped
+     * @param names the labels of the new states
+     * @return this builder
+     */
+    public NFABuilder addStates(String... names) {
+        return addStates(Arrays.asList(names));
+    }
+
+    /**
+     * Sets the start state
+     * @param name the label of an added state
+     * @return this builder
+     */
+    public NFABuilder setStart(String name) {
+        checkNotBuilt();
+        this.startState = state(name);
+        return this;
+    }
+
+    /**
+     * Marks states as accepting
+     * @param names the labels of added states
+     * @return this builder
+     */
+    public NFABuilder setFinal(Collection<String> names) {
+        checkNotBuilt();
+        for (String name : names) {
+            this.finalStates.add(state(name));
+        }
+        return this;
+    }
+
+    /**
+     * Marks states as accepting
+     * @param names the labels of added states
+     * @return this builder
+     */
+    public NFABuilder setFinal(String... names) {
+        return setFinal(Arrays.asList(names));
+    }
+
+    /**
+     * Adds transitions from one state to several states on one symbol
+     * @param fromState the label of the state where the transitions start
+     * @param toStates the labels of the states where they end
+     * @param onSymb a symbol in Sigma, or 'e' for epsilon transitions
+     * @return this builder
+     */
+    public NFABuilder addTransitions(String fromState, Collection<String> toStates, char onSymb) {
+        checkNotBuilt();
+        NFAState from = state(fromState);
+        checkSymbol(onSymb);
+        NFAState[] targets = states(toStates);
+        if (targets.length > 0) {
+            char[] symbol = { onSymb };
+            from.addTransitions(symbol, symbol, new NFAState[][] { targets });
+        }
+        return this;
+    }
+
+    /**
+     * Adds transitions from one state to several states on every symbol of Sigma from
+     * first to last. The symbol 'e' is left out of the range, since a transition on it is
+     * an epsilon transition.
+     * @param fromState the label of the state where the transitions start
+     * @param toStates the labels of the states where they end
+     * @param first the smallest symbol of the range
+     * @param last the largest symbol of the range
+     * @return this builder
+     */
+    public NFABuilder addTransitions(String fromState, Collection<String> toStates, char first, char last) {
+        checkNotBuilt();
+        NFAState from = state(fromState);
+        CharRanges symbols = NFA.symbolsBetween(this.alphabet, first, last);
+        if (symbols.isEmpty()) {
+            throw new IllegalArgumentException("no symbol of Sigma from " + first + " to " + last);
+        }
+        NFAState[] targets = states(toStates);
+        if (targets.length > 0) {
+            NFAState[][] perRange = new NFAState[symbols.rangeCount()][];
+            Arrays.fill(perRange, targets);
+            from.addTransitions(symbols.los(), symbols.his(), perRange);
+        }
+        return this;
+    }
+
+    /*
+     * Adds transitions on ranges of symbols from one state, for automata rebuilt from the
+     * symbol classes of a compiled one. The symbols are not checked against Sigma, since
+     * they came from an automaton that already did.
+     * @param fromState the label of the state where the transitions start
+     * @param lo the first symbols of the ranges, ascending
+     * @param hi the last symbols of the ranges, which do not overlap
+     * @param toStates toStates[i] are the labels of the targets on lo[i]..hi[i], not empty;
+     * ranges given the same array share the targets
+     * @return this builder
+     */
+    NFABuilder addTransitions(String fromState, char[] lo, char[] hi, String[][] toStates) {
+        checkNotBuilt();
+        NFAState from = state(fromState);
+        Map<String[], NFAState[]> resolved = new IdentityHashMap<String[], NFAState[]>();
+        NFAState[][] targets = new NFAState[toStates.length][];
+        for (int i = 0; i < toStates.length; i++) {
+            targets[i] = resolved.get(toStates[i]);
+            if (targets[i] == null) {
+                targets[i] = states(Arrays.asList(toStates[i]));
+                resolved.put(toStates[i], targets[i]);
+            }
+        }
+        from.addTransitions(lo, hi, targets);
+        return this;
+    }
+
+    /*
+     * Adds the transitions of one row of a compiled table per symbol class: every segment
+     * of class sym gets transitions to toStates[sym], and classes whose entry is null or
+     * empty get none. Like the method above, the symbols are not checked against Sigma.
+     * @param fromState the label of the state where the transitions start
+     * @param symbols the symbol classes
+     * @param toStates the labels of the targets on each class
+     * @return this builder
+     */
+    NFABuilder addTransitions(String fromState, SymbolMap symbols, String[][] toStates) {
+        char[] lo = new char[symbols.segmentCount()];
+        char[] hi = new char[lo.length];
+        String[][] targets = new String[lo.length][];
+        int size = 0;
+        for (int i = 0; i < lo.length; i++) {
+            String[] to = toStates[symbols.segmentClass(i)];
+            if (to != null && to.length > 0) {
+                lo[size] = symbols.segmentLo(i);
+                hi[size] = symbols.segmentHi(i);
+                targets[size++] = to;
+            }
+        }
+        return addTransitions(fromState, Arrays.copyOf(lo, size), Arrays.copyOf(hi, size), Arrays.copyOf(targets, size));
+    }
+
+    /**
+     * Adds a list of single transitions, the i-th going from fromStates[i] to toStates[i] on symbols[i]
+     * @param fromStates the labels of the states where the transitions start
+     * @param symbols the symbols the transitions are taken on ('e' for epsilon)
+     * @param toStates the labels of the states where the transitions end
+     * @return this builder
+     */
+    public NFABuilder addTransitions(String[] fromStates, char[] symbols, String[] toStates) {
+        checkNotBuilt();
+        if (fromStates.length != symbols.length || symbols.length != toStates.length) {
+            throw new IllegalArgumentException("transition arrays have different lengths");
+        }
+        // Group the edges by source state, then by symbol, so that each state merges its new
+        // symbols in one pass
+        Map<NFAState, List<Integer>> bySource = new IdentityHashMap<NFAState, List<Integer>>();
+        NFAState[] targets = new NFAState[toStates.length];
+        for (int i = 0; i < fromStates.length; i++) {
+            checkSymbol(symbols[i]);
+            bySource.computeIfAbsent(state(fromStates[i]), s -> new ArrayList<Integer>()).add(i);
+            targets[i] = state(toStates[i]);
+        }
+        for (Map.Entry<NFAState, List<Integer>> entry : bySource.entrySet()) {
+            List<Integer> edges = entry.getValue();
+            long[] keys = new long[edges.size()];
+            for (int j = 0; j < keys.length; j++) {
+                keys[j] = (long) symbols[edges.get(j)] << 32 | edges.get(j);
+            }
+            Arrays.sort(keys);
+            char[] onSymbs = new char[keys.length];
+            NFAState[][] perSymbol = new NFAState[keys.length][];
+            int size = 0;
+            for (int j = 0; j < keys.length; ) {
+                char symbol = (char) (keys[j] >>> 32);
+                int end = j;
+                while (end < keys.length && (char) (keys[end] >>> 32) == symbol) {
+                    end++;
+                }
+                NFAState[] to = new NFAState[end - j];
+                for (int t = j; t < end; t++) {
+                    to[t - j] = targets[(int) keys[t]];
+                }
+                onSymbs[size] = symbol;
+                perSymbol[size++] = to;
+                j = end;
+            }
+            char[] lo = Arrays.copyOf(onSymbs, size);
+            entry.getKey().addTransitions(lo, lo, Arrays.copyOf(perSymbol, size));
+        }
+        return this;
+    }
+
+    /**
+     * Hands everything added so far to a new NFA
+     * @return the NFA
+     */
+    public NFA build() {
+        checkNotBuilt();
+        NFA nfa = new NFA(this.alphabet, this.states, this.startState, this.finalStates);
+        this.states = null;
+        return nfa;
+    }
+
+    private NFAState state(String name) {
+        NFAState state = this.states.get(name);
+        if (state == null) {
+            throw new IllegalArgumentException("no state named " + name);
+        }
+        return state;
+    }
+
+    // Looks up the labels, keeping each state once
+    private NFAState[] states(Collection<String> names) {
+        Set<NFAState> states = Collections.newSetFromMap(new IdentityHashMap<NFAState, Boolean>());
+        List<NFAState> ordered = new ArrayList<NFAState>(names.size());
+        for (String name : names) {
+            NFAState state = state(name);
+            if (states.add(state)) {
+                ordered.add(state);
+            }
+        }
+        return ordered.toArray(new NFAState[0]);
+    }
+
+    private void checkSymbol(char onSymb) {
+        if (!this.alphabet.contains(onSymb) && onSymb != 'e') {
+            throw new IllegalArgumentException("symbol " + onSymb + " is not in Sigma");
+        }
+    }
+
+    // The built NFA owns the states, so the builder must not change them afterwards
+    private void checkNotBuilt() {
+        if (this.states == null) {
+            throw new IllegalStateException("build() was already called");
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Runs a CompiledNFA with the active state set held in a long[] bitset.
+ * The current and next sets are allocated once and swapped after every step,
+ * so no objects are created per input character.
+ *
+ * Every set the simulator builds is epsilon-closed: a state is only ever added
+ * together with its whole closure. That lets a step skip a target whose bit is
+ * already set, since its closure must already be in the set too.
+ *
+ * Large closures and large successor sets of a (state, symbol) row are ORed in as whole
+ * rows, and the other word loops over the sets run on BitsetKernel, which uses SIMD
+ * instructions when the Vector API is available. Rows with few successors still add
+ * each target's closure one by one, since that touches fewer words than a row.
+ *
+ * A simulator is scratch space for a single thread; create one per thread.
+ */
+final class NFASimulator {
+    private final CompiledNFA nfa;
+    private final int symbolCount;
+    private long[] current;
+    private long[] next;
+
+    // Only updated while counting, so uninstrumented runs pay a single predictable branch
+    private boolean counting;
+    private long closureExpansions;
+    private long transitionsFollowed;
+
+    /**
+     * Constructor for a simulator, which starts in the closure of the start state
+     * @param nfa the automaton to run
+     */
+    NFASimulator(CompiledNFA nfa) {
+        this.nfa = nfa;
+        this.symbolCount = nfa.symbolCount();
+        this.current = new long[CompiledNFA.words(nfa.stateCount())];
+        this.next = new long[this.current.length];
+        reset();
+    }
+
+    /**
+     * Returns to the closure of the start state (or the empty set if there is no start state)
+     */
+    void reset() {
+        Arrays.fill(this.current, 0L);
+        if (this.nfa.start >= 0) {
+            addClosure(this.current, this.nfa.start);
+        }
+    }
+
+    /**
+     * Adds the closure of the start state to the active set, which lets a new run begin
+     * at the current position while the runs already in progress continue
+     */
+    void addStart() {
+        if (this.nfa.start >= 0) {
+            addClosure(this.current, this.nfa.start);
+        }
+    }
+
+    /**
+     * Adds every state of an epsilon-closed set to the active set
+     * @param set the states to add, as many words long as the active set
+     */
+    void addAll(long[] set) {
+        BitsetKernel.KERNEL.or(this.current, set, 0);
+    }
+
+    /**
+     * Moves every active state along its transitions on c
+     * @param c the input character
+     */
+    void step(char c) {
+        long[] from = this.current;
+        long[] to = this.next;
+        Arrays.fill(to, 0L);
+
+        int sym = this.nfa.symbolId(c);
+        if (sym >= 0) {
+            int[] offsets = this.nfa.offsets;
+            int[] targets = this.nfa.targets;
+            // Counted runs take the per-target path, so the metrics stay the same either way
+            int[] successorRow = this.counting ? null : this.nfa.successorRow;
+            for (int w = 0; w < from.length; w++) {
+                long word = from[w];
+                while (word != 0) {
+                    int state = (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    int row = state * this.symbolCount + sym;
+                    if (successorRow != null && successorRow[row] >= 0) {
+                        BitsetKernel.KERNEL.or(to, this.nfa.denseSuccessors, successorRow[row]);
+                        continue;
+                    }
+                    if (this.counting) {
+                        this.transitionsFollowed += offsets[row + 1] - offsets[row];
+                    }
+                    for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                        addClosure(to, targets[i]);
+                    }
+                }
+            }
+        }
+
+        this.current = to;
+        this.next = from;
+    }
+
+    /**
+     * Replaces the active set with a copy of an epsilon-closed set
+     * @param set array holding the set
+     * @param from index in set of the set's first word
+     */
+    void load(long[] set, int from) {
+        System.arraycopy(set, from, this.current, 0, this.current.length);
+    }
+
+    /**
+     * @return the active set; it is overwritten by the next step, so callers must not keep it
+     */
+    long[] current() {
+        return this.current;
+    }
+
+    /**
+     * @return true if at least one active state is final
+     */
+    boolean isAccepting() {
+        return BitsetKernel.KERNEL.intersects(this.current, this.nfa.finalBits);
+    }
+
+    /**
+     * @return the number of active states
+     */
+    int activeCount() {
+        return BitsetKernel.KERNEL.popCount(this.current);
+    }
+
+    /**
+     * Runs the automaton over all of s from the start state
+     * @param s the input string
+     * @return true if s is accepted
+     */
+    boolean accepts(CharSequence s) {
+        reset();
+        if (!keepUseful()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            step(s.charAt(i));
+            if (!keepUseful()) {
+                return false;
+            }
+        }
+        return isAccepting();
+    }
+
+    /**
+     * Runs the automaton over all of s from the start state
+     * @param s the input string
+     * @return the largest number of states active at once
+     */
+    int maxCopies(CharSequence s) {
+        reset();
+        int copyMax = activeCount();
+        for (int i = 0; i < s.length() && copyMax > 0; i++) {
+            step(s.charAt(i));
+            int active = activeCount();
+            if (active == 0) {
+                break; // an empty set stays empty
+            }
+            copyMax = Math.max(copyMax, active);
+        }
+        return copyMax;
+    }
+
+    /**
+     * Drops the active states from which no final state can be reached any more. Dropping
+     * them keeps the invariant that sets are closed as far as acceptance is concerned:
+     * a useful state's closure only loses states that are useless themselves.
+     * @return false if no useful state is left, so no continuation of the input can be accepted
+     */
+    boolean keepUseful() {
+        return BitsetKernel.KERNEL.and(this.current, this.nfa.usefulBits);
+    }
+
+    /**
+     * Runs the automaton over all of s from the start state, counting its work, and reports
+     * the run to the listener and to JFR if the SimulationEvent is enabled
+     * @param s the input string
+     * @param listener receives every step and the totals, or null
+     * @return the totals of the run
+     */
+    SimulationMetrics instrumentedRun(CharSequence s, SimulationListener listener) {
+        SimulationEvent event = new SimulationEvent();
+        event.begin();
+        this.counting = true;
+        this.closureExpansions = 0;
+        this.transitionsFollowed = 0;
+
+        reset();
+        int active = activeCount();
+        int copyMax = active;
+        int emptyAt = active == 0 ? 0 : -1;
+        if (listener != null) {
+            listener.onStep(0, active);
+        }
+        for (int i = 0; i < s.length(); i++) {
+            step(s.charAt(i));
+            active = activeCount();
+            copyMax = Math.max(copyMax, active);
+            if (active == 0 && emptyAt < 0) {
+                emptyAt = i + 1;
+            }
+            if (listener != null) {
+                listener.onStep(i + 1, active);
+            }
+        }
+        this.counting = false;
+
+        SimulationMetrics metrics = new SimulationMetrics(s.length(), copyMax, this.closureExpansions,
+                this.transitionsFollowed, emptyAt, isAccepting());
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputLength = metrics.getInputLength();
+            event.maxActive = metrics.getMaxActive();
+            event.closureExpansions = metrics.getClosureExpansions();
+            event.transitionsFollowed = metrics.getTransitionsFollowed();
+            event.emptyAt = metrics.getEmptyAt();
+            event.accepted = metrics.isAccepted();
+            event.commit();
+        }
+        if (listener != null) {
+            listener.onRun(metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return true if runs have to go through instrumentedRun because JFR is recording SimulationEvents
+     */
+    static boolean eventsEnabled() {
+        // Until a recording starts, the event class is not instrumented and this reads a constant false;
+        // the unused event does not escape, so the JIT removes its allocation
+        return new SimulationEvent().isEnabled();
+    }
+
+    // Adds state and its epsilon-closure to set, unless state is already there
+    private void addClosure(long[] set, int state) {
+        if ((set[state >>> 6] & (1L << state)) != 0) {
+            return;
+        }
+        if (this.counting) {
+            this.closureExpansions++;
+        }
+        int row = this.nfa.denseRow[state];
+        if (row >= 0) {
+            BitsetKernel.KERNEL.or(set, this.nfa.denseClosures, row);
+            return;
+        }
+        int[] closureTargets = this.nfa.closureTargets;
+        for (int i = this.nfa.closureOffsets[state]; i < this.nfa.closureOffsets[state + 1]; i++) {
+            int reached = closureTargets[i];
+            set[reached >>> 6] |= 1L << reached;
+        }
+    }
+}
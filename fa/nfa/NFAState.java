@@ -9,13 +9,27 @@ import fa.State;
  * Represents a state within a NFA.
  * Extends the State class to include comparison capabilities to support
  * in ordering collections.
+ *
+ * Transitions are kept in primitive arrays instead of a Map of boxed Characters to
+ * HashSets: the symbols a state has transitions on are sorted, disjoint ranges lo[i] to
+ * hi[i], found by binary search, and the targets of every symbol of range i are the array
+ * targets[i], without duplicates. A transition on 'a' to 'z' or on all of Unicode is then
+ * one range, and looking a symbol up never boxes it.
  * @author Axel Murillo
  * @author Julia Melchert
  */
 public class NFAState extends State implements Comparable<NFAState> {
+    private static final char[] NO_SYMBOLS = new char[0];
+    private static final NFAState[][] NO_TARGETS = new NFAState[0][];
+    private static final NFAState[] NO_STATES = new NFAState[0];
+
+    // Above this many pairs, checking for duplicates through a HashSet beats scanning
+    private static final int SCAN_LIMIT = 64;
 
     public String name;
-    public Map<Character, HashSet<NFAState>> transitions;
+    private char[] lo; // first symbols of the ranges, ascending
+    private char[] hi; // last symbols of the ranges; the ranges never overlap
+    private NFAState[][] targets; // targets[i] are the targets on lo[i]..hi[i], never empty; all exactly sized
 
     /**
      * Constructor for an NFAState object
@@ -23,7 +37,9 @@ public class NFAState extends State implements Comparable<NFAState> {
      */
     public NFAState(String name) {
         this.name = name;
-        this.transitions = new HashMap<Character, HashSet<NFAState>>();
+        this.lo = NO_SYMBOLS;
+        this.hi = NO_SYMBOLS;
+        this.targets = NO_TARGETS;
     }
 
     public String getName() {
@@ -39,25 +55,217 @@ public class NFAState extends State implements Comparable<NFAState> {
          return state.getName().compareTo(this.getName());
     }
 
+    /**
+     * Looks up the transitions on one symbol
+     * @param onSymb the symbol, or 'e' for the epsilon transitions
+     * @return the states the transitions on onSymb lead to, as an unmodifiable set that is empty if there are none
+     */
+    public Set<NFAState> getTransitions(char onSymb) {
+        int i = rangeOf(onSymb);
+        return i < 0 ? Collections.<NFAState>emptySet() : new Targets(this.targets[i]);
+    }
+
+    /**
+     * @param onSymb the symbol, or 'e' for epsilon
+     * @return true if the state has at least one transition on onSymb
+     */
+    public boolean hasTransitions(char onSymb) {
+        return rangeOf(onSymb) >= 0;
+    }
+
+    /**
+     * @return the symbols this state has transitions on ('e' included), in ascending order
+     */
+    public char[] getSymbols() {
+        int count = 0;
+        for (int i = 0; i < this.lo.length; i++) {
+            count += this.hi[i] - this.lo[i] + 1;
+        }
+        char[] symbols = new char[count];
+        int size = 0;
+        for (int i = 0; i < this.lo.length; i++) {
+            for (int c = this.lo[i]; c <= this.hi[i]; c++) {
+                symbols[size++] = (char) c;
+            }
+        }
+        return symbols;
+    }
+
     /*
-     * Adds all the transitions given in toStates to update this object's transitions map.
-     * This is used internally in NFA.java's addTransition() method, so it assumes toStates 
-     * and onSymb are valid (since they're checked in NFA.java's addTransition() before this 
+     * Adds all the transitions given in toStates to update this object's transitions.
+     * This is used internally in NFA.java's addTransition() method, so it assumes toStates
+     * and onSymb are valid (since they're checked in NFA.java's addTransition() before this
      * is called).
 	 * @param toStates is the set of NFAStates where the transitions end
 	 * @param onSymb is the symbol from the NFA's alphabet that the transition is taken on
     */
     public void addTransition(HashSet<NFAState> toStates, char onSymb) {
-        // If a transition on onSymb already exists, add to its set of destination states
-        if (this.transitions.containsKey(onSymb)) {
-            HashSet<NFAState> currentVal = this.transitions.get(onSymb);
-            currentVal.addAll(toStates);
-            this.transitions.put(onSymb, currentVal);
-        
-        // Otherwise, create a new transition with the symbol and states
-        } else {
-            this.transitions.put(onSymb, toStates);
+        if (toStates.isEmpty()) {
+            return;
+        }
+        char[] symbol = { onSymb };
+        addTransitions(symbol, symbol, new NFAState[][] { toStates.toArray(NO_STATES) });
+    }
+
+    /*
+     * Adds transitions on ranges of symbols in one pass over the ranges the state already
+     * has, splitting them where the new ones start or end. Like the method above, this
+     * assumes the arguments were validated by the caller.
+	 * @param onLo the first symbols of the ranges, ascending
+	 * @param onHi the last symbols of the ranges, which do not overlap
+	 * @param toStates toStates[i] are the targets on onLo[i]..onHi[i], not empty; an array
+	 * may be kept as it is and shared between ranges, so it must not be changed afterwards
+    */
+    void addTransitions(char[] onLo, char[] onHi, NFAState[][] toStates) {
+        int capacity = 2 * (this.lo.length + onLo.length);
+        char[] lo = new char[capacity];
+        char[] hi = new char[capacity];
+        NFAState[][] targets = new NFAState[capacity][];
+        int size = CharRanges.merge(this.lo, this.hi, this.targets, onLo, onHi, toStates,
+                NO_STATES, NFAState::merge, lo, hi, targets);
+        this.lo = Arrays.copyOf(lo, size);
+        this.hi = Arrays.copyOf(hi, size);
+        this.targets = Arrays.copyOf(targets, size);
+    }
+
+    /**
+     * @param onSymb a symbol
+     * @return the number of targets on onSymb
+     */
+    int targetCount(char onSymb) {
+        int i = rangeOf(onSymb);
+        return i < 0 ? 0 : this.targets[i].length;
+    }
+
+    /**
+     * Counts the symbols of a range that have at least some number of targets
+     * @param first the smallest symbol of the range
+     * @param last the largest symbol of the range
+     * @param atLeast the number of targets, at least 1
+     * @return the number of symbols from first to last with atLeast targets or more
+     */
+    long symbolsWithTargets(char first, char last, int atLeast) {
+        long count = 0;
+        for (int i = CharRanges.rangeFrom(this.hi, this.hi.length, first); i < this.lo.length && this.lo[i] <= last; i++) {
+            if (this.targets[i].length >= atLeast) {
+                count += Math.min(this.hi[i], last) - Math.max(this.lo[i], first) + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of ranges of symbols this state has transitions on
+     */
+    int rangeCount() {
+        return this.lo.length;
+    }
+
+    /**
+     * @param i an index below rangeCount()
+     * @return the first symbol of the i-th range in ascending order
+     */
+    char rangeLo(int i) {
+        return this.lo[i];
+    }
+
+    /**
+     * @param i an index below rangeCount()
+     * @return the last symbol of the i-th range
+     */
+    char rangeHi(int i) {
+        return this.hi[i];
+    }
+
+    /**
+     * @param i an index below rangeCount()
+     * @return the targets on every symbol of the i-th range; the array must not be modified
+     */
+    NFAState[] targetsAt(int i) {
+        return this.targets[i];
+    }
+
+    /**
+     * @param onSymb a symbol
+     * @return the targets on onSymb, or null if there are none; the array must not be modified
+     */
+    NFAState[] targetsOn(char onSymb) {
+        int i = rangeOf(onSymb);
+        return i < 0 ? null : this.targets[i];
+    }
+
+    // Finds the range holding onSymb, or -1 if there is none
+    private int rangeOf(char onSymb) {
+        int i = CharRanges.rangeFrom(this.hi, this.hi.length, onSymb);
+        return i < this.lo.length && this.lo[i] <= onSymb ? i : -1;
+    }
+
+    /*
+     * Returns current followed by the states of added it does not hold yet, once each.
+     * Either array is returned as it is if it already is the result, so target arrays are
+     * shared but never changed.
+     */
+    private static NFAState[] merge(NFAState[] current, NFAState[] added) {
+        NFAState[] merged = Arrays.copyOf(current, current.length + added.length);
+        int size = current.length;
+        Set<NFAState> present = (long) merged.length * added.length > SCAN_LIMIT
+                ? Collections.newSetFromMap(new IdentityHashMap<NFAState, Boolean>()) : null;
+        if (present != null) {
+            present.addAll(Arrays.asList(current));
+        }
+        for (NFAState toState : added) {
+            if (present != null ? present.add(toState) : indexOf(merged, size, toState) < 0) {
+                merged[size++] = toState;
+            }
+        }
+        if (size == current.length) {
+            return current;
+        }
+        if (current.length == 0 && size == added.length) {
+            return added;
+        }
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    private static int indexOf(NFAState[] states, NFAState state) {
+        return indexOf(states, states.length, state);
+    }
+
+    // Looks for state among the first length entries of states
+    private static int indexOf(NFAState[] states, int length, NFAState state) {
+        for (int i = 0; i < length; i++) {
+            if (states[i] == state) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * An unmodifiable set over one target array. Arrays are replaced rather than changed
+     * when transitions are added, so the set never changes after it is returned.
+     */
+    private static final class Targets extends AbstractSet<NFAState> {
+        private final NFAState[] states;
+
+        Targets(NFAState[] states) {
+            this.states = states;
+        }
+
+        @Override
+        public Iterator<NFAState> iterator() {
+            return Arrays.asList(this.states).iterator();
+        }
+
+        @Override
+        public int size() {
+            return this.states.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof NFAState && indexOf(this.states, (NFAState) o) >= 0;
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,649 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An automaton whose transition table lives outside the Java heap, for automata too
+ * large to keep as NFAState objects or even as a CompiledNFA. All of it is kept in one
+ * block of direct memory with this layout (little-endian, every section 8-byte aligned):
+ * <pre>
+ *   header   MAGIC, VERSION, n (states), k (symbol classes), start state or -1, m (transitions),
+ *            b (bytes of the names section, 0 if there is none), c (characters)
+ *   symbols  c chars, ascending, then c ints: the symbol class of each char
+ *   finals   (n + 63) / 64 longs, bit s set if state s is final
+ *   offsets  n * k + 1 ints: the targets of (state, class) are targets[offsets[state * k + class] ..)
+ *   targets  m ints
+ *   names    n + 1 ints, then the UTF-8 bytes of all state names: the name of state s is
+ *            bytes[nameOffsets[s] .. nameOffsets[s + 1])
+ * </pre>
+ * The same bytes are the file format of writeTo and load. Loading maps the file into
+ * memory and runs straight from the mapping, so nothing is copied or rebuilt. It only
+ * reads the header, the symbols and the ends of the offsets and names sections, so it
+ * takes the same time for any size of table and pages in none of it. verify() reads the
+ * rest once to check that every row and name stays inside its section and every target
+ * is a state; a damaged table that was not verified may give wrong answers or fail in
+ * the middle of a run. The version is bumped whenever the layout changes, and files of
+ * other versions are rejected.
+ *
+ * Epsilon transitions are the row of the symbol 'e', as in CompiledNFA, and closures are
+ * followed during simulation instead of being stored. The heap only holds the symbol
+ * table and the bitsets of a run, so the heap a run needs grows with the number of
+ * states divided by 64 instead of with the number of transitions.
+ *
+ * The block is addressed by long offsets and split into ChunkedBuffer chunks of 1 GiB,
+ * since one ByteBuffer holds at most 2 GiB; offsets and targets are ints, so a table may
+ * have up to 2^31 - 1 transitions and any number of (state, class) rows that fits in
+ * memory. Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the
+ * maximum heap size, so that flag is the one to raise for very large automata. The
+ * memory is released when the OffHeapNFA becomes unreachable. An OffHeapNFA is
+ * never modified, so one instance can be shared by any number of threads.
+ */
+public final class OffHeapNFA {
+    static final int MAGIC = 0x4E464131; // "NFA1"
+    static final int VERSION = 2; // 2 added symbol classes
+    static final int HEADER_BYTES = 32;
+
+    private final ChunkedBuffer data;
+    private final int stateCount;
+    private final int symbolCount;
+    private final int start;
+    private final int transitionCount;
+    private final SymbolMap symbols;
+    private final int epsilon; // class number of 'e', or -1
+    private final long finalsAt;
+    private final long offsetsAt;
+    private final long targetsAt;
+    private final long namesAt; // -1 if the states have no names
+    private final long nameBytesAt;
+    private final int namesSize;
+    private volatile Map<String, Integer> stateIds;
+
+    /**
+     * Constructor for an automaton stored in the layout described above
+     * @param data the memory, starting with the header
+     * @throws IllegalArgumentException if the memory does not hold a valid automaton
+     */
+    OffHeapNFA(ChunkedBuffer data) {
+        this.data = data;
+        if (data.size() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not an NFA table");
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("unsupported NFA table version " + data.getInt(4));
+        }
+        this.stateCount = data.getInt(8);
+        this.symbolCount = data.getInt(12);
+        this.start = data.getInt(16);
+        this.transitionCount = data.getInt(20);
+        int namesSize = data.getInt(24);
+        int charCount = data.getInt(28);
+        if (this.stateCount < 0 || this.symbolCount < 0 || this.start < -1 || this.start >= this.stateCount
+                || this.transitionCount < 0 || namesSize < 0 || charCount < this.symbolCount || data.size()
+                != size(this.stateCount, this.symbolCount, charCount, this.transitionCount, namesSize)) {
+            throw new IllegalArgumentException("corrupt NFA table header");
+        }
+
+        char[] chars = new char[charCount];
+        int[] classOf = new int[charCount];
+        long classesAt = HEADER_BYTES + align(2L * charCount);
+        for (int i = 0; i < charCount; i++) {
+            chars[i] = data.getChar(HEADER_BYTES + 2L * i);
+            classOf[i] = data.getInt(classesAt + 4L * i);
+            if (i > 0 && chars[i] <= chars[i - 1]) {
+                throw new IllegalArgumentException("NFA table symbols are not ascending");
+            }
+        }
+        this.symbols = SymbolMap.of(chars, classOf);
+        for (int i = 0; i < charCount; i++) {
+            if (this.symbols.id(chars[i]) != classOf[i]) {
+                throw new IllegalArgumentException("corrupt NFA table symbol classes");
+            }
+        }
+        if (this.symbols.size() != this.symbolCount) {
+            throw new IllegalArgumentException("corrupt NFA table symbol classes");
+        }
+        this.epsilon = this.symbols.id(CompiledNFA.EPSILON);
+
+        this.finalsAt = finalsAt(charCount);
+        this.offsetsAt = offsetsAt(this.stateCount, charCount);
+        this.targetsAt = targetsAt(this.stateCount, this.symbolCount, charCount);
+        this.namesSize = namesSize;
+        long rows = (long) this.stateCount * this.symbolCount;
+        if (data.getInt(this.offsetsAt) != 0 || data.getInt(this.offsetsAt + 4 * rows) != this.transitionCount) {
+            throw new IllegalArgumentException("corrupt NFA table offsets");
+        }
+        if (namesSize == 0) {
+            this.namesAt = -1;
+            this.nameBytesAt = -1;
+        } else {
+            if (namesSize < 4L * (this.stateCount + 1)) {
+                throw new IllegalArgumentException("corrupt NFA table names");
+            }
+            this.namesAt = this.targetsAt + align(4L * this.transitionCount);
+            this.nameBytesAt = this.namesAt + 4L * (this.stateCount + 1);
+            int nameBytes = data.getInt(this.namesAt + 4L * this.stateCount);
+            if (data.getInt(this.namesAt) != 0 || nameBytes < 0 || nameBytes > namesSize - 4L * (this.stateCount + 1)) {
+                throw new IllegalArgumentException("corrupt NFA table names");
+            }
+        }
+    }
+
+    /**
+     * Checks the whole table: that every row of the offsets and every name stays inside
+     * its section and every transition leads to a state. Loading only checks the header,
+     * so call this once on files that may be damaged; it reads the entire table.
+     * @return this automaton
+     * @throws IllegalArgumentException if the table is damaged
+     */
+    public OffHeapNFA verify() {
+        long rows = (long) this.stateCount * this.symbolCount;
+        checkAscending(this.offsetsAt, rows + 1, this.transitionCount, "offsets");
+        for (int i = 0; i < this.transitionCount; i++) {
+            int target = this.data.getInt(this.targetsAt + 4L * i);
+            if (target < 0 || target >= this.stateCount) {
+                throw new IllegalArgumentException("NFA table transition to unknown state " + target);
+            }
+        }
+        if (this.namesAt >= 0) {
+            checkAscending(this.namesAt, this.stateCount + 1, this.namesSize - 4L * (this.stateCount + 1), "names");
+        }
+        return this;
+    }
+
+    // Checks that the count ints at from start at 0, never decrease and stay at most at limit
+    private void checkAscending(long from, long count, long limit, String section) {
+        int previous = 0;
+        for (long i = 0; i < count; i++) {
+            int offset = this.data.getInt(from + 4 * i);
+            if (offset < previous || offset > limit || (i == 0 && offset != 0)) {
+                throw new IllegalArgumentException("corrupt NFA table " + section);
+            }
+            previous = offset;
+        }
+    }
+
+    // Section positions; everything is padded to whole longs so the sections stay aligned
+    private static long finalsAt(int c) {
+        return HEADER_BYTES + align(2L * c) + align(4L * c);
+    }
+
+    private static long offsetsAt(int n, int c) {
+        return finalsAt(c) + 8L * CompiledNFA.words(n);
+    }
+
+    private static long targetsAt(int n, int k, int c) {
+        return offsetsAt(n, c) + align(4 * ((long) n * k + 1));
+    }
+
+    /**
+     * @param n the number of states
+     * @param k the number of symbol classes
+     * @param c the number of characters in the classes
+     * @param m the number of transitions
+     * @param namesSize the size in bytes of the names section, a multiple of 8
+     * @return the size in bytes of an automaton in this layout
+     */
+    static long size(int n, int k, int c, int m, int namesSize) {
+        return targetsAt(n, k, c) + align(4L * m) + namesSize;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    // Writes the header and symbols, returning the memory for the rest to be filled in
+    private static ChunkedBuffer allocate(int n, SymbolMap symbols, int start, int m, int namesSize) {
+        char[] chars = symbols.chars();
+        ChunkedBuffer data = ChunkedBuffer.allocate(size(n, symbols.size(), chars.length, m, namesSize));
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        data.putInt(8, n);
+        data.putInt(12, symbols.size());
+        data.putInt(16, start);
+        data.putInt(20, m);
+        data.putInt(24, namesSize);
+        data.putInt(28, chars.length);
+        long classesAt = HEADER_BYTES + align(2L * chars.length);
+        for (int i = 0; i < chars.length; i++) {
+            data.putChar(HEADER_BYTES + 2L * i, chars[i]);
+            data.putInt(classesAt + 4L * i, symbols.id(chars[i]));
+        }
+        return data;
+    }
+
+    /**
+     * Copies a compiled automaton into off-heap memory
+     * @param nfa the automaton
+     * @return an OffHeapNFA accepting the same strings, with the same state numbers and names
+     */
+    static OffHeapNFA of(CompiledNFA nfa) {
+        int n = nfa.stateCount();
+        int k = nfa.symbolCount();
+        int c = nfa.symbols.charCount();
+        int m = nfa.offsets[n * k];
+        byte[][] names = new byte[n][];
+        long nameLength = 0;
+        for (int state = 0; state < n; state++) {
+            names[state] = nfa.stateNames[state].getBytes(StandardCharsets.UTF_8);
+            nameLength += names[state].length;
+        }
+        long namesSize = align(4L * (n + 1) + nameLength);
+        if (namesSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("state names of " + nameLength + " bytes do not fit in an NFA table");
+        }
+        ChunkedBuffer data = allocate(n, nfa.symbols, nfa.start, m, (int) namesSize);
+        data.putLongs(finalsAt(c), nfa.finalBits);
+        data.putInts(offsetsAt(n, c), nfa.offsets, n * k + 1);
+        data.putInts(targetsAt(n, k, c), nfa.targets, m);
+        long namesAt = targetsAt(n, k, c) + align(4L * m);
+        long bytesAt = namesAt + 4L * (n + 1);
+        int position = 0;
+        for (int state = 0; state < n; state++) {
+            data.putInt(namesAt + 4L * state, position);
+            data.put(bytesAt + position, names[state]);
+            position += names[state].length;
+        }
+        data.putInt(namesAt + 4L * n, position);
+        return new OffHeapNFA(data);
+    }
+
+    /**
+     * Maps a file written by writeTo into memory. Nothing is copied or rebuilt: the
+     * automaton runs directly from the mapping, which the operating system pages in as
+     * the transitions are used and shares between processes loading the same file.
+     * Only the header is checked; use verify() for files that may be damaged.
+     * @param file the file to load
+     * @return the automaton stored in the file
+     * @throws IOException if the file cannot be mapped
+     * @throws IllegalArgumentException if the file does not hold an automaton of this version
+     */
+    public static OffHeapNFA load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new OffHeapNFA(ChunkedBuffer.map(channel));
+        }
+    }
+
+    /**
+     * Saves the automaton in the format read by load. The file is the automaton's memory
+     * byte for byte, so writing it is a single copy.
+     * @param file the file to write; it is replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.data.writeTo(channel);
+        }
+    }
+
+    /**
+     * Starts building an off-heap automaton directly, without creating NFAState objects
+     * or a CompiledNFA first. States are numbered 0..stateCount-1.
+     * @param stateCount the number of states
+     * @param sigma the input symbols; 'e' marks epsilon transitions and need not be listed
+     * @return a new builder
+     */
+    public static Builder builder(int stateCount, char... sigma) {
+        return new Builder(stateCount, sigma);
+    }
+
+    /**
+     * @return the number of states, which are numbered 0..stateCount()-1
+     */
+    public int stateCount() {
+        return this.stateCount;
+    }
+
+    /**
+     * @return the number of transitions, epsilon transitions included
+     */
+    public int transitionCount() {
+        return this.transitionCount;
+    }
+
+    /**
+     * @return the number of bytes of off-heap memory holding the automaton
+     */
+    public long offHeapBytes() {
+        return this.data.size();
+    }
+
+    /**
+     * @return the number of the start state, or -1 if there is none
+     */
+    public int startState() {
+        return this.start;
+    }
+
+    /**
+     * @param state a state number
+     * @return the name of the state, or null if the automaton was built without names
+     */
+    public String stateName(int state) {
+        if (this.namesAt < 0) {
+            return null;
+        }
+        int from = this.data.getInt(this.namesAt + 4L * state);
+        byte[] name = new byte[this.data.getInt(this.namesAt + 4L * state + 4) - from];
+        this.data.get(this.nameBytesAt + from, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Looks a state up by name. The first call decodes all names once.
+     * @param name the name of a state
+     * @return its number, or -1 if no state has that name
+     */
+    public int stateId(String name) {
+        Map<String, Integer> ids = this.stateIds;
+        if (ids == null) {
+            ids = new HashMap<String, Integer>();
+            for (int state = 0; this.namesAt >= 0 && state < this.stateCount; state++) {
+                ids.put(stateName(state), state);
+            }
+            this.stateIds = ids;
+        }
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param state a state number
+     * @return true if the state is accepting
+     */
+    public boolean isFinal(int state) {
+        return (this.data.getLong(this.finalsAt + 8L * (state >>> 6)) & (1L << state)) != 0;
+    }
+
+    /**
+     * Traverses all epsilon transitions from a state
+     * @param state a state number
+     * @return the numbers of all states reachable from state on epsilon transitions (state included), ascending
+     */
+    public int[] eClosure(int state) {
+        Run run = new Run();
+        Arrays.fill(run.current, 0L);
+        run.addClosure(run.current, state);
+        int[] closure = new int[run.count()];
+        int i = 0;
+        for (int w = 0; w < run.current.length; w++) {
+            for (long word = run.current[w]; word != 0; word &= word - 1) {
+                closure[i++] = (w << 6) | Long.numberOfTrailingZeros(word);
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Simulates the automaton on input s to determine whether it accepts s.
+     * @param s the input string
+     * @return true if s is in the language of the automaton and false otherwise
+     */
+    public boolean accepts(CharSequence s) {
+        Run run = new Run();
+        for (int i = 0; i < s.length() && run.count() > 0; i++) {
+            run.step(s.charAt(i));
+        }
+        return run.isAccepting();
+    }
+
+    /**
+     * Determines the maximum number of NFA copies created when processing s
+     * @param s the input string
+     * @return the largest number of simultaneously active states
+     */
+    public int maxCopies(CharSequence s) {
+        Run run = new Run();
+        int copyMax = run.count();
+        for (int i = 0; i < s.length() && copyMax > 0; i++) {
+            run.step(s.charAt(i));
+            int active = run.count();
+            if (active == 0) {
+                break;
+            }
+            copyMax = Math.max(copyMax, active);
+        }
+        return copyMax;
+    }
+
+    /*
+     * The state of one simulation. Closures are found with a depth-first search over the
+     * epsilon row that stops at states already in the set, since every state in a set has
+     * its whole closure there too.
+     */
+    private final class Run {
+        long[] current = new long[CompiledNFA.words(OffHeapNFA.this.stateCount)];
+        long[] next = new long[this.current.length];
+        int[] stack = new int[16];
+
+        Run() {
+            if (OffHeapNFA.this.start >= 0) {
+                addClosure(this.current, OffHeapNFA.this.start);
+            }
+        }
+
+        void step(char c) {
+            long[] from = this.current;
+            long[] to = this.next;
+            Arrays.fill(to, 0L);
+            int sym = OffHeapNFA.this.symbols.id(c);
+            for (int w = 0; sym >= 0 && w < from.length; w++) {
+                for (long word = from[w]; word != 0; word &= word - 1) {
+                    long row = offsetOf((w << 6) | Long.numberOfTrailingZeros(word), sym);
+                    int end = OffHeapNFA.this.data.getInt(row + 4);
+                    for (int i = OffHeapNFA.this.data.getInt(row); i < end; i++) {
+                        addClosure(to, target(i));
+                    }
+                }
+            }
+            this.current = to;
+            this.next = from;
+        }
+
+        void addClosure(long[] set, int state) {
+            if ((set[state >>> 6] & (1L << state)) != 0) {
+                return;
+            }
+            set[state >>> 6] |= 1L << state;
+            int epsilon = OffHeapNFA.this.epsilon;
+            if (epsilon < 0) {
+                return;
+            }
+            int top = 0;
+            this.stack[top++] = state;
+            while (top > 0) {
+                long row = offsetOf(this.stack[--top], epsilon);
+                int end = OffHeapNFA.this.data.getInt(row + 4);
+                for (int i = OffHeapNFA.this.data.getInt(row); i < end; i++) {
+                    int reached = target(i);
+                    if ((set[reached >>> 6] & (1L << reached)) == 0) {
+                        set[reached >>> 6] |= 1L << reached;
+                        if (top == this.stack.length) {
+                            this.stack = Arrays.copyOf(this.stack, top * 2);
+                        }
+                        this.stack[top++] = reached;
+                    }
+                }
+            }
+        }
+
+        // Position of the offset of the targets of (state, sym)
+        long offsetOf(int state, int sym) {
+            return OffHeapNFA.this.offsetsAt + 4 * ((long) state * OffHeapNFA.this.symbolCount + sym);
+        }
+
+        int target(int i) {
+            return OffHeapNFA.this.data.getInt(OffHeapNFA.this.targetsAt + 4L * i);
+        }
+
+        int count() {
+            return BitsetKernel.KERNEL.popCount(this.current);
+        }
+
+        boolean isAccepting() {
+            for (int w = 0; w < this.current.length; w++) {
+                if ((this.current[w] & OffHeapNFA.this.data.getLong(OffHeapNFA.this.finalsAt + 8L * w)) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Collects the transitions of an OffHeapNFA in off-heap memory and lays them out
+     * as a table once build() is called. Throws IllegalArgumentException for unknown
+     * states or symbols, like NFABuilder. States built this way have numbers but no names.
+     */
+    public static final class Builder {
+        private final int stateCount;
+        private final TreeSet<Character> sigma = new TreeSet<Character>();
+        private final long[] finals;
+        private int start = -1;
+        private boolean epsilonUsed;
+        // (from, symbol, to) triples, 12 bytes each
+        private ChunkedBuffer edges = ChunkedBuffer.allocate(12 * 1024);
+        private int edgeCount;
+        private boolean built;
+
+        private Builder(int stateCount, char[] sigma) {
+            if (stateCount < 0) {
+                throw new IllegalArgumentException("negative state count " + stateCount);
+            }
+            this.stateCount = stateCount;
+            this.finals = new long[CompiledNFA.words(stateCount)];
+            for (char symbol : sigma) {
+                if (symbol != CompiledNFA.EPSILON) {
+                    this.sigma.add(symbol);
+                }
+            }
+        }
+
+        /**
+         * Sets the start state
+         * @param state a state number
+         * @return this builder
+         */
+        public Builder setStart(int state) {
+            checkNotBuilt();
+            checkState(state);
+            this.start = state;
+            return this;
+        }
+
+        /**
+         * Makes states final
+         * @param states state numbers
+         * @return this builder
+         */
+        public Builder setFinal(int... states) {
+            checkNotBuilt();
+            for (int state : states) {
+                checkState(state);
+                this.finals[state >>> 6] |= 1L << state;
+            }
+            return this;
+        }
+
+        /**
+         * Adds a transition
+         * @param fromState the state where the transition starts
+         * @param onSymb a symbol in Sigma, or 'e' for an epsilon transition
+         * @param toState the state where it ends
+         * @return this builder
+         */
+        public Builder addTransition(int fromState, char onSymb, int toState) {
+            checkNotBuilt();
+            checkState(fromState);
+            checkState(toState);
+            if (onSymb == CompiledNFA.EPSILON) {
+                this.epsilonUsed = true;
+            } else if (!this.sigma.contains(onSymb)) {
+                throw new IllegalArgumentException("symbol " + onSymb + " is not in Sigma");
+            }
+            if (this.edgeCount == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("too many transitions for an NFA table");
+            }
+            if (this.edges.size() - 12L * this.edgeCount < 12) {
+                this.edges = this.edges.grow(2 * this.edges.size());
+            }
+            long at = 12L * this.edgeCount++;
+            this.edges.putInt(at, fromState);
+            this.edges.putInt(at + 4, onSymb);
+            this.edges.putInt(at + 8, toState);
+            return this;
+        }
+
+        /**
+         * Lays the transitions out as a table with a counting sort done in place in the
+         * offsets section, so no extra memory of the size of the table is needed
+         * @return the automaton
+         */
+        public OffHeapNFA build() {
+            checkNotBuilt();
+            this.built = true;
+            if (this.epsilonUsed) {
+                this.sigma.add(CompiledNFA.EPSILON);
+            }
+            char[] symbols = new char[this.sigma.size()];
+            int k = 0;
+            for (char c : this.sigma) {
+                symbols[k++] = c;
+            }
+            SymbolMap symbolMap = new SymbolMap(symbols); // one class per character; no analysis is run here
+            int n = this.stateCount;
+
+            ChunkedBuffer data = allocate(n, symbolMap, this.start, this.edgeCount, 0);
+            data.putLongs(finalsAt(k), this.finals);
+            long offsets = offsetsAt(n, k);
+            long targets = targetsAt(n, k, k);
+            long rows = (long) n * k;
+
+            // Count each row into offsets[row + 1], sum up, place each target at offsets[row]++,
+            // and shift everything back by one row
+            for (int e = 0; e < this.edgeCount; e++) {
+                long at = offsets + 4 * (row(e, k, symbolMap) + 1);
+                data.putInt(at, data.getInt(at) + 1);
+            }
+            for (long row = 1; row <= rows; row++) {
+                data.putInt(offsets + 4 * row, data.getInt(offsets + 4 * row) + data.getInt(offsets + 4 * row - 4));
+            }
+            for (int e = 0; e < this.edgeCount; e++) {
+                long row = offsets + 4 * row(e, k, symbolMap);
+                int at = data.getInt(row);
+                data.putInt(targets + 4L * at, this.edges.getInt(12L * e + 8));
+                data.putInt(row, at + 1);
+            }
+            for (long row = rows; row > 0; row--) {
+                data.putInt(offsets + 4 * row, data.getInt(offsets + 4 * row - 4));
+            }
+            data.putInt(offsets, 0);
+            this.edges = null;
+            return new OffHeapNFA(data);
+        }
+
+        private long row(int edge, int k, SymbolMap symbolMap) {
+            return (long) this.edges.getInt(12L * edge) * k + symbolMap.id((char) this.edges.getInt(12L * edge + 4));
+        }
+
+        private void checkState(int state) {
+            if (state < 0 || state >= this.stateCount) {
+                throw new IllegalArgumentException("no state " + state);
+            }
+        }
+
+        private void checkNotBuilt() {
+            if (this.built) {
+                throw new IllegalStateException("build() was already called");
+            }
+        }
+    }
+}
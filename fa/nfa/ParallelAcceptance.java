@@ -0,0 +1,289 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Decides whether one long input is accepted using several threads.
+ * The input is cut into chunks. The first chunk is simulated from the start state as
+ * usual. Every other chunk computes its transfer function: for each state the run could
+ * be in when the chunk begins, the set of states active when it ends. A step maps a
+ * union of sets to the union of their images, so the transfer function of a chunk is a
+ * relation between states, and applying the chunks' relations one after another to the
+ * first chunk's result gives exactly the set a sequential run ends in.
+ *
+ * Running the chunk from every possible entry state would multiply the work by the
+ * number of states. Instead, entry states whose runs are in the same set are merged into
+ * one group and simulated once. Runs of an NFA usually fall into a few sets after a few
+ * characters, so most of a chunk costs about as much as a single run. Runs that die are
+ * dropped, and only states that can be reached from the start and can still reach a
+ * final state are tried as entries.
+ */
+final class ParallelAcceptance {
+    // Shorter chunks cost more to set up than they save
+    static final int MIN_CHUNK = 1 << 14;
+
+    private ParallelAcceptance() {
+    }
+
+    /**
+     * Runs accepts on one input, split into chunks that run in parallel
+     * @param nfa the automaton
+     * @param s the input string
+     * @param executor the executor that runs the chunks
+     * @param parallelism the largest number of chunks to split s into
+     * @return true if s is accepted
+     */
+    static boolean accepts(CompiledNFA nfa, CharSequence s, Executor executor, int parallelism) {
+        if (!nfa.prefilter().mayAccept(s)) {
+            return false;
+        }
+        int chunks = Math.min(parallelism, s.length() / MIN_CHUNK);
+        if (chunks < 2) {
+            return new NFASimulator(nfa).accepts(s);
+        }
+
+        int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            bounds[i] = (int) ((long) s.length() * i / chunks);
+        }
+        boolean[] entries = entryStates(nfa);
+        List<CompletableFuture<Transfer>> transfers = new ArrayList<CompletableFuture<Transfer>>(chunks - 1);
+        for (int i = 1; i < chunks; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            transfers.add(CompletableFuture.supplyAsync(() -> Transfer.of(nfa, entries, s, from, to), executor));
+        }
+
+        // The first chunk runs on the calling thread while the others work out their transfers
+        NFASimulator simulator = new NFASimulator(nfa);
+        boolean alive = simulator.keepUseful();
+        for (int i = 0; i < bounds[1] && alive; i++) {
+            simulator.step(s.charAt(i));
+            alive = simulator.keepUseful();
+        }
+        long[] set = simulator.current().clone();
+        for (int i = 1; i < chunks; i++) {
+            Transfer transfer = transfers.get(i - 1).join();
+            if (alive) {
+                set = transfer.apply(set);
+                alive = BitsetKernel.KERNEL.popCount(set) > 0;
+            }
+        }
+        return alive && BitsetKernel.KERNEL.intersects(set, nfa.finalBits);
+    }
+
+    // The states a run can be in between two chunks: reachable from the start and able to reach a final state
+    private static boolean[] entryStates(CompiledNFA nfa) {
+        int[][] graph = nfa.stateGraph();
+        boolean[] seeds = new boolean[nfa.stateCount()];
+        seeds[nfa.start] = true;
+        boolean[] entries = Reachability.reachable(graph[0], graph[1], seeds);
+        for (int state = 0; state < entries.length; state++) {
+            entries[state] &= (nfa.usefulBits[state >>> 6] & (1L << state)) != 0;
+        }
+        return entries;
+    }
+
+    /**
+     * The transfer function of one chunk: entry state e leads to the set in group groupOf[e],
+     * stored at exits[groupOf[e] * words ..), or to no state at all if groupOf[e] is -1.
+     */
+    static final class Transfer {
+        private final int[] groupOf;
+        private final long[] exits;
+        private final int words;
+
+        private Transfer(int[] groupOf, long[] exits, int words) {
+            this.groupOf = groupOf;
+            this.exits = exits;
+            this.words = words;
+        }
+
+        /*
+         * Simulates every group of entry states over s[from .. to). Each group keeps a linked
+         * list of the entry groups it started as (head, tail, next), so merging two groups
+         * costs O(1) and the entries only have to be assigned their final group at the end.
+         */
+        static Transfer of(CompiledNFA nfa, boolean[] entries, CharSequence s, int from, int to) {
+            int n = nfa.stateCount();
+            int words = CompiledNFA.words(n);
+            GroupTable table = new GroupTable(words);
+
+            int[] initialGroup = new int[n];
+            long[] set = new long[words];
+            for (int state = 0; state < n; state++) {
+                initialGroup[state] = -1;
+                if (!entries[state]) {
+                    continue;
+                }
+                Arrays.fill(set, 0L);
+                for (int i = nfa.closureOffsets[state]; i < nfa.closureOffsets[state + 1]; i++) {
+                    int reached = nfa.closureTargets[i];
+                    set[reached >>> 6] |= 1L << reached;
+                }
+                if (BitsetKernel.KERNEL.and(set, nfa.usefulBits)) {
+                    initialGroup[state] = table.intern(set);
+                }
+            }
+            int initialCount = table.size();
+            int[] next = new int[initialCount];
+            Arrays.fill(next, -1);
+            int[] head = new int[initialCount];
+            int[] tail = new int[initialCount];
+            for (int g = 0; g < initialCount; g++) {
+                head[g] = g;
+                tail[g] = g;
+            }
+            int[] newHead = new int[initialCount];
+            int[] newTail = new int[initialCount];
+
+            NFASimulator simulator = new NFASimulator(nfa);
+            GroupTable nextTable = new GroupTable(words);
+            for (int i = from; i < to && table.size() > 0; i++) {
+                char c = s.charAt(i);
+                nextTable.clear(table.size());
+                for (int g = 0; g < table.size(); g++) {
+                    simulator.load(table.sets, g * words);
+                    simulator.step(c);
+                    if (!simulator.keepUseful()) {
+                        continue; // every entry in this group dies here
+                    }
+                    int merged = nextTable.intern(simulator.current());
+                    if (nextTable.fresh) {
+                        newHead[merged] = head[g];
+                    } else {
+                        next[newTail[merged]] = head[g];
+                    }
+                    newTail[merged] = tail[g];
+                }
+                GroupTable swap = table;
+                table = nextTable;
+                nextTable = swap;
+                int[] swapHead = head;
+                head = newHead;
+                newHead = swapHead;
+                int[] swapTail = tail;
+                tail = newTail;
+                newTail = swapTail;
+            }
+
+            // Walk each surviving group's list to find out where its initial groups ended up
+            int[] finalGroup = new int[initialCount];
+            Arrays.fill(finalGroup, -1);
+            for (int g = 0; g < table.size(); g++) {
+                for (int member = head[g]; member >= 0; member = member == tail[g] ? -1 : next[member]) {
+                    finalGroup[member] = g;
+                }
+            }
+            int[] groupOf = new int[n];
+            for (int state = 0; state < n; state++) {
+                groupOf[state] = initialGroup[state] < 0 ? -1 : finalGroup[initialGroup[state]];
+            }
+            return new Transfer(groupOf, Arrays.copyOf(table.sets, table.size() * words), words);
+        }
+
+        /**
+         * Maps a set of entry states to the union of the sets they lead to
+         * @param set the active states at the start of the chunk
+         * @return the active states at its end
+         */
+        long[] apply(long[] set) {
+            long[] result = new long[this.words];
+            boolean[] added = new boolean[this.exits.length / Math.max(1, this.words)];
+            for (int w = 0; w < set.length; w++) {
+                long word = set[w];
+                while (word != 0) {
+                    int state = (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    int group = this.groupOf[state];
+                    if (group >= 0 && !added[group]) {
+                        added[group] = true;
+                        BitsetKernel.KERNEL.or(result, this.exits, group * this.words);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /*
+     * Numbers distinct sets in the order they are first seen. The sets are stored one after
+     * another in one array and found again through an open-addressing table of ids + 1.
+     */
+    private static final class GroupTable {
+        private final int words;
+        long[] sets;
+        private int count;
+        private int[] slots;
+        boolean fresh; // whether the last intern added a new set
+
+        GroupTable(int words) {
+            this.words = words;
+            this.sets = new long[16 * Math.max(1, words)];
+            this.slots = new int[32];
+        }
+
+        int size() {
+            return this.count;
+        }
+
+        // Forgets every set, making room for up to expected sets without resizing the table
+        void clear(int expected) {
+            this.count = 0;
+            int size = Integer.highestOneBit(Math.max(1, expected) * 2 - 1) << 1;
+            if (this.slots.length < size) {
+                this.slots = new int[size];
+            } else {
+                Arrays.fill(this.slots, 0);
+            }
+        }
+
+        int intern(long[] set) {
+            if (2 * (this.count + 1) > this.slots.length) {
+                rehash(this.slots.length * 2);
+            }
+            int mask = this.slots.length - 1;
+            for (int i = hash(set, 0) & mask; ; i = (i + 1) & mask) {
+                int id = this.slots[i] - 1;
+                if (id < 0) {
+                    if ((this.count + 1) * this.words > this.sets.length) {
+                        this.sets = Arrays.copyOf(this.sets, this.sets.length * 2);
+                    }
+                    System.arraycopy(set, 0, this.sets, this.count * this.words, this.words);
+                    this.slots[i] = ++this.count;
+                    this.fresh = true;
+                    return this.count - 1;
+                }
+                if (Arrays.equals(this.sets, id * this.words, (id + 1) * this.words, set, 0, this.words)) {
+                    this.fresh = false;
+                    return id;
+                }
+            }
+        }
+
+        private void rehash(int size) {
+            this.slots = new int[size];
+            int mask = size - 1;
+            for (int id = 0; id < this.count; id++) {
+                int i = hash(this.sets, id * this.words) & mask;
+                while (this.slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                this.slots[i] = id + 1;
+            }
+        }
+
+        private int hash(long[] array, int from) {
+            long h = 1;
+            for (int w = 0; w < this.words; w++) {
+                h = 31 * h + array[from + w];
+            }
+            int folded = (int) (h ^ (h >>> 32));
+            return folded ^ (folded >>> 16);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Runs several NFAs over an input in a single pass and reports which of them accept it.
+ * The patterns are compiled side by side into one automaton whose initial set is the
+ * union of their start closures. Since no transition leads from one pattern into another,
+ * each state still belongs to exactly one pattern, and a pattern accepts the input if
+ * one of its final states is active at the end.
+ *
+ * The cost of a run grows with the number of states active at once instead of with
+ * the number of patterns times the input length. States from which no final state can
+ * be reached are dropped after every step, and the run stops when none are left.
+ *
+ * A PatternSet is immutable, so one instance can be shared by any number of threads.
+ */
+public final class PatternSet {
+    private final CompiledNFA nfa;
+    private final int patternCount;
+    private final int[] patternOf; // patternOf[state] is the index of the pattern state came from
+    private final long[] startSet;
+
+    private PatternSet(List<CompiledNFA> patterns) {
+        this.nfa = CompiledNFA.union(patterns);
+        this.patternCount = patterns.size();
+        this.patternOf = new int[this.nfa.stateCount()];
+        this.startSet = new long[CompiledNFA.words(this.nfa.stateCount())];
+
+        int base = 0;
+        for (int p = 0; p < patterns.size(); p++) {
+            CompiledNFA pattern = patterns.get(p);
+            Arrays.fill(this.patternOf, base, base + pattern.stateCount(), p);
+            if (pattern.startState() >= 0) {
+                for (int state : pattern.eClosure(pattern.startState())) {
+                    this.startSet[(base + state) >>> 6] |= 1L << (base + state);
+                }
+            }
+            base += pattern.stateCount();
+        }
+    }
+
+    /**
+     * Combines NFAs into a pattern set. Later changes to the NFAs do not affect it.
+     * @param patterns the automata; the i-th one has pattern id i
+     * @return the pattern set
+     */
+    public static PatternSet of(List<? extends NFA> patterns) {
+        List<CompiledNFA> compiled = new ArrayList<CompiledNFA>(patterns.size());
+        for (NFA pattern : patterns) {
+            compiled.add(pattern.compile());
+        }
+        return new PatternSet(compiled);
+    }
+
+    /**
+     * Combines NFAs into a pattern set. Later changes to the NFAs do not affect it.
+     * @param patterns the automata; the i-th one has pattern id i
+     * @return the pattern set
+     */
+    public static PatternSet of(NFA... patterns) {
+        return of(Arrays.asList(patterns));
+    }
+
+    /**
+     * @return the number of patterns
+     */
+    public int size() {
+        return this.patternCount;
+    }
+
+    /**
+     * @return the total number of states of all patterns
+     */
+    public int stateCount() {
+        return this.nfa.stateCount();
+    }
+
+    /**
+     * Finds every pattern that accepts the input
+     * @param s the input string
+     * @return the ids of the accepting patterns
+     */
+    public BitSet matches(CharSequence s) {
+        BitSet matched = new BitSet(this.patternCount);
+        long[] set = run(s);
+        for (int w = 0; w < set.length; w++) {
+            long accepting = set[w] & this.nfa.finalBits[w];
+            while (accepting != 0) {
+                matched.set(this.patternOf[(w << 6) | Long.numberOfTrailingZeros(accepting)]);
+                accepting &= accepting - 1;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Finds every pattern that accepts the input
+     * @param s the input string
+     * @return the ids of the accepting patterns in ascending order
+     */
+    public int[] matchIds(CharSequence s) {
+        return matches(s).stream().toArray();
+    }
+
+    /**
+     * Determines whether at least one pattern accepts the input
+     * @param s the input string
+     * @return true if some pattern accepts s
+     */
+    public boolean matchesAny(CharSequence s) {
+        return BitsetKernel.KERNEL.intersects(run(s), this.nfa.finalBits);
+    }
+
+    // Returns the set of states active after s, without the states that cannot reach a final state
+    private long[] run(CharSequence s) {
+        BitParallelNFA bitParallel = this.nfa.bitParallel;
+        if (bitParallel != null) {
+            long useful = this.nfa.usefulBits.length == 0 ? 0 : this.nfa.usefulBits[0];
+            long set = this.startSet.length == 0 ? 0 : this.startSet[0] & useful;
+            for (int i = 0; i < s.length() && set != 0; i++) {
+                set = bitParallel.step(set, s.charAt(i)) & useful;
+            }
+            return this.startSet.length == 0 ? this.startSet : new long[] { set };
+        }
+
+        NFASimulator simulator = new NFASimulator(this.nfa);
+        simulator.load(this.startSet, 0);
+        boolean alive = simulator.keepUseful();
+        for (int i = 0; i < s.length() && alive; i++) {
+            simulator.step(s.charAt(i));
+            alive = simulator.keepUseful();
+        }
+        return simulator.current();
+    }
+}
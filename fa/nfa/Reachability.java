@@ -0,0 +1,102 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Graph searches used to prune automata. Graphs are given in compressed-sparse-row form:
+ * the successors of node v are targets[offsets[v] .. offsets[v + 1]).
+ */
+final class Reachability {
+
+    private Reachability() {
+    }
+
+    /**
+     * Finds every node reachable from the seed nodes (the seeds included)
+     * @param offsets row offsets of the graph, one more than the number of nodes
+     * @param targets edge targets of the graph
+     * @param seeds seeds[v] is true if the search starts at v
+     * @return reached[v] is true if v can be reached from some seed
+     */
+    static boolean[] reachable(int[] offsets, int[] targets, boolean[] seeds) {
+        int n = offsets.length - 1;
+        boolean[] reached = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (seeds[v]) {
+                reached[v] = true;
+                queue[tail++] = v;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int w = targets[i];
+                if (!reached[w]) {
+                    reached[w] = true;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Reverses every edge of a graph
+     * @param offsets row offsets of the graph
+     * @param targets edge targets of the graph
+     * @return { offsets, targets } of the reversed graph
+     */
+    static int[][] reverse(int[] offsets, int[] targets) {
+        int n = offsets.length - 1;
+        int[] reverseOffsets = new int[n + 1];
+        for (int i = 0; i < offsets[n]; i++) {
+            reverseOffsets[targets[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        int[] fill = Arrays.copyOf(reverseOffsets, n);
+        int[] reverseTargets = new int[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                reverseTargets[fill[targets[i]]++] = v;
+            }
+        }
+        return new int[][] { reverseOffsets, reverseTargets };
+    }
+
+    /**
+     * Finds the live nodes of an automaton's graph: those reachable from the start that can
+     * also reach a final node. The start is always kept, so a trimmed automaton still has one.
+     * @param offsets row offsets of the graph
+     * @param targets edge targets of the graph (only the first offsets[n] entries are used)
+     * @param start the start node
+     * @param finals finals[v] is true if v is a final node
+     * @return live[v] is true if v should be kept
+     */
+    static boolean[] live(int[] offsets, int[] targets, int start, boolean[] finals) {
+        boolean[] seeds = new boolean[finals.length];
+        seeds[start] = true;
+        boolean[] live = reachable(offsets, targets, seeds);
+        boolean[] useful = coReachable(offsets, targets, finals);
+        for (int v = 0; v < finals.length; v++) {
+            live[v] &= useful[v];
+        }
+        live[start] = true;
+        return live;
+    }
+
+    /**
+     * Finds every node from which some final node can be reached (the finals included)
+     * @param offsets row offsets of the graph
+     * @param targets edge targets of the graph (only the first offsets[n] entries are used)
+     * @param finals finals[v] is true if v is a final node
+     * @return useful[v] is true if a final node is reachable from v
+     */
+    static boolean[] coReachable(int[] offsets, int[] targets, boolean[] finals) {
+        int[][] reverse = reverse(offsets, targets);
+        return reachable(reverse[0], reverse[1], finals);
+    }
+}
@@ -0,0 +1,44 @@
+package fa.nfa;
+
+/**
+ * BitsetKernel in plain loops over the words, used when the Vector API is not available.
+ * The loops are simple enough that the JIT can often unroll or vectorize them itself.
+ */
+final class ScalarKernel implements BitsetKernel {
+
+    @Override
+    public void or(long[] set, long[] rows, int from) {
+        for (int w = 0; w < set.length; w++) {
+            set[w] |= rows[from + w];
+        }
+    }
+
+    @Override
+    public boolean and(long[] set, long[] mask) {
+        long any = 0;
+        for (int w = 0; w < set.length; w++) {
+            set[w] &= mask[w];
+            any |= set[w];
+        }
+        return any != 0;
+    }
+
+    @Override
+    public boolean intersects(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            if ((a[w] & b[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int popCount(long[] set) {
+        int count = 0;
+        for (long word : set) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
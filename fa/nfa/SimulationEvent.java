@@ -0,0 +1,36 @@
+package fa.nfa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event committed at the end of every accepts or maxCopies run while a recording
+ * has it enabled. Runs are only instrumented when it is enabled or a listener is set.
+ */
+@Name("fa.nfa.Simulation")
+@Label("NFA Simulation")
+@Category("NFA")
+@Description("One accepts or maxCopies run of an NFA")
+final class SimulationEvent extends Event {
+    @Label("Input Length")
+    int inputLength;
+
+    @Label("Max Active States")
+    int maxActive;
+
+    @Label("Closure Expansions")
+    long closureExpansions;
+
+    @Label("Transitions Followed")
+    long transitionsFollowed;
+
+    @Label("Empty At")
+    @Description("Characters consumed when no state was active anymore, or -1")
+    int emptyAt;
+
+    @Label("Accepted")
+    boolean accepted;
+}
@@ -0,0 +1,22 @@
+package fa.nfa;
+
+/**
+ * Receives the details of every simulation run of an NFA that has a listener set with
+ * NFA.setSimulationListener, or of runs passed a listener directly.
+ */
+public interface SimulationListener {
+
+	/**
+	 * Called once before the first character and once after every character of a run
+	 * @param position the number of characters consumed so far
+	 * @param activeStates the number of states active at that point
+	 */
+	public default void onStep(int position, int activeStates) {
+	}
+
+	/**
+	 * Called when a run ends
+	 * @param metrics the totals of the run
+	 */
+	public void onRun(SimulationMetrics metrics);
+}
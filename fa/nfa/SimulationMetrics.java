@@ -0,0 +1,72 @@
+package fa.nfa;
+
+/**
+ * The totals of one accepts or maxCopies run, as given to a SimulationListener.
+ */
+public final class SimulationMetrics {
+    private final int inputLength;
+    private final int maxActive;
+    private final long closureExpansions;
+    private final long transitionsFollowed;
+    private final int emptyAt;
+    private final boolean accepted;
+
+    SimulationMetrics(int inputLength, int maxActive, long closureExpansions, long transitionsFollowed,
+            int emptyAt, boolean accepted) {
+        this.inputLength = inputLength;
+        this.maxActive = maxActive;
+        this.closureExpansions = closureExpansions;
+        this.transitionsFollowed = transitionsFollowed;
+        this.emptyAt = emptyAt;
+        this.accepted = accepted;
+    }
+
+    /**
+     * @return the length of the input
+     */
+    public int getInputLength() {
+        return this.inputLength;
+    }
+
+    /**
+     * @return the largest number of states active at once, which is what maxCopies returns
+     */
+    public int getMaxActive() {
+        return this.maxActive;
+    }
+
+    /**
+     * @return how many states were added to an active set together with their epsilon-closure
+     */
+    public long getClosureExpansions() {
+        return this.closureExpansions;
+    }
+
+    /**
+     * @return how many (state, symbol, target) transitions were followed
+     */
+    public long getTransitionsFollowed() {
+        return this.transitionsFollowed;
+    }
+
+    /**
+     * @return the number of characters consumed when no state was active anymore, or -1 if that never happened
+     */
+    public int getEmptyAt() {
+        return this.emptyAt;
+    }
+
+    /**
+     * @return true if the input was accepted
+     */
+    public boolean isAccepted() {
+        return this.accepted;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationMetrics[inputLength=" + this.inputLength + ", maxActive=" + this.maxActive
+                + ", closureExpansions=" + this.closureExpansions + ", transitionsFollowed=" + this.transitionsFollowed
+                + ", emptyAt=" + this.emptyAt + ", accepted=" + this.accepted + "]";
+    }
+}
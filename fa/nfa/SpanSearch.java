@@ -0,0 +1,245 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Finds the non-overlapping leftmost-longest matches in a text, one at a time.
+ *
+ * The text is read once, forward, with the closure of the start state injected at every
+ * position. Each active state carries the smallest position it was reached from, so a
+ * final state shows both where a match ends and its leftmost start, and of two runs
+ * meeting in one state the later start is dropped, as it can never be leftmost.
+ *
+ * A match is only known to be the longest once every run from its start has died, and
+ * the next match may begin before that, at the end of the longest match found so far.
+ * The active states are therefore split into levels: level 0 finds the current match, and
+ * each level above it searches on from the end of the best match of the level below. A
+ * state belongs to the lowest level that reached it, as its future is the same in every
+ * level and any match it leads to lengthens that lower level, which voids all levels
+ * above. A match is reported when its level is the lowest and has no active state left.
+ * So every position is stepped once however long the runs of a match last, and the work
+ * per position is bounded by the number of states, as in an accepting run.
+ *
+ * While no run is active, the search jumps with indexOf to the next occurrence of the
+ * literal prefix every match starts with, and it stops as soon as the rest of the text
+ * lacks a literal every match has, so text between candidate regions is never stepped.
+ *
+ * Like most regular expression engines, an empty match directly after the previous match
+ * is skipped, so every position is reported at most once.
+ */
+final class SpanSearch implements Iterator<MatchSpan> {
+    private final CompiledNFA nfa;
+    private final int symbolCount;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] closureOffsets;
+    private final int[] closureTargets;
+    private final long[] finalBits;
+    private final long[] usefulBits;
+    private final CharSequence text;
+    private final int from;
+    private final LiteralPrefilter.Candidates candidates;
+    private int position; // the next position to be scanned
+
+    // The active states sorted by level, then by start; the first entry of a state wins
+    private int[] states;
+    private int[] levels;
+    private int[] starts;
+    private int size;
+    private int[] nextStates;
+    private int[] nextLevels;
+    private int[] nextStarts;
+    private int nextSize;
+    private final int[] claimed; // claimed[state] == stamp if the set being built holds state
+    private int stamp;
+
+    // Levels first..levelCount-1 are live; all but the top one have a best match
+    private int first;
+    private int levelCount;
+    private int[] matchStart; // start of the best match of a level, or -1
+    private int[] matchEnd;
+    private int[] skipEmptyAt; // the end of the match below a level, where it may not match empty
+
+    private MatchSpan next;
+
+    /**
+     * Constructor for a search, which looks for the first match right away
+     * @param nfa the automaton
+     * @param text the text to search
+     * @param from the index where the search starts
+     */
+    SpanSearch(CompiledNFA nfa, CharSequence text, int from) {
+        if (from < 0 || from > text.length()) {
+            throw new IndexOutOfBoundsException("from " + from + " outside text of length " + text.length());
+        }
+        this.nfa = nfa;
+        this.symbolCount = nfa.symbolCount();
+        this.offsets = nfa.offsets;
+        this.targets = nfa.targets;
+        this.closureOffsets = nfa.closureOffsets;
+        this.closureTargets = nfa.closureTargets;
+        this.finalBits = nfa.finalBits;
+        this.usefulBits = nfa.usefulBits;
+        this.text = text;
+        this.from = from;
+        int n = nfa.stateCount();
+        this.states = new int[n];
+        this.levels = new int[n];
+        this.starts = new int[n];
+        this.nextStates = new int[n];
+        this.nextLevels = new int[n];
+        this.nextStarts = new int[n];
+        this.claimed = new int[n];
+        this.matchStart = new int[16];
+        this.matchEnd = new int[16];
+        this.skipEmptyAt = new int[16];
+        pushLevel(-1);
+        this.candidates = nfa.prefilter().candidates(text);
+        this.position = nfa.start >= 0 ? from : text.length() + 1;
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    @Override
+    public MatchSpan next() {
+        if (this.next == null) {
+            throw new NoSuchElementException();
+        }
+        MatchSpan match = this.next;
+        advance();
+        return match;
+    }
+
+    // Finds the match after the current one, or sets next to null if there is none
+    private void advance() {
+        while (this.position <= this.text.length() && !lowestDone()) {
+            scan(this.position++);
+        }
+        if (lowestDone()) {
+            this.next = new MatchSpan(this.matchStart[this.first], this.matchEnd[this.first]);
+            this.first++;
+            if (this.first > 1024 && this.first * 2 > this.levelCount) {
+                compact();
+            }
+        } else {
+            this.next = null;
+        }
+    }
+
+    // True if the lowest level has a match that can no longer change: it has no state left, or the text is over
+    private boolean lowestDone() {
+        return this.first < this.levelCount - 1
+                && (this.position > this.text.length() || this.size == 0 || this.levels[0] != this.first);
+    }
+
+    /*
+     * Steps the active states onto position p, starts a run at p in the top level, and
+     * records the first valid match end at p, which is in the lowest level that has one.
+     * If nothing is running and no match is pending, the next run that matters starts at
+     * the next candidate, so the positions before it are skipped.
+     */
+    private void scan(int p) {
+        this.stamp++;
+        this.nextSize = 0;
+        if (p > this.from) {
+            int sym = this.nfa.symbolId(this.text.charAt(p - 1));
+            for (int e = 0; sym >= 0 && e < this.size; e++) {
+                int row = this.states[e] * this.symbolCount + sym;
+                for (int i = this.offsets[row]; i < this.offsets[row + 1]; i++) {
+                    addClosure(this.targets[i], this.levels[e], this.starts[e]);
+                }
+            }
+        }
+        if (this.nextSize == 0 && this.first == this.levelCount - 1) {
+            int candidate = this.candidates.next(p);
+            if (candidate != p) {
+                this.position = candidate < 0 ? this.text.length() + 1 : candidate;
+                this.size = 0;
+                return;
+            }
+        }
+        addClosure(this.nfa.start, this.levelCount - 1, p);
+
+        for (int e = 0; e < this.nextSize; e++) {
+            int state = this.nextStates[e];
+            int level = this.nextLevels[e];
+            int start = this.nextStarts[e];
+            if ((this.finalBits[state >>> 6] & (1L << state)) == 0
+                    || (start == p && this.skipEmptyAt[level] == p)) {
+                continue;
+            }
+            // Runs from later starts in this level and all levels above can no longer matter
+            this.matchStart[level] = start;
+            this.matchEnd[level] = p;
+            int cut = e + 1;
+            while (cut < this.nextSize && this.nextLevels[cut] == level && this.nextStarts[cut] == start) {
+                cut++;
+            }
+            for (int i = cut; i < this.nextSize; i++) {
+                this.claimed[this.nextStates[i]] = 0;
+            }
+            this.nextSize = cut;
+            this.levelCount = level + 1;
+            pushLevel(p);
+            addClosure(this.nfa.start, this.levelCount - 1, p);
+            break;
+        }
+
+        int[] states = this.states;
+        int[] levels = this.levels;
+        int[] starts = this.starts;
+        this.states = this.nextStates;
+        this.levels = this.nextLevels;
+        this.starts = this.nextStarts;
+        this.size = this.nextSize;
+        this.nextStates = states;
+        this.nextLevels = levels;
+        this.nextStarts = starts;
+    }
+
+    // Adds the useful states of the closure of state that no earlier entry holds
+    private void addClosure(int state, int level, int start) {
+        if (this.claimed[state] == this.stamp) {
+            return; // its whole closure was added with it
+        }
+        for (int i = this.closureOffsets[state]; i < this.closureOffsets[state + 1]; i++) {
+            int reached = this.closureTargets[i];
+            if (this.claimed[reached] != this.stamp && (this.usefulBits[reached >>> 6] & (1L << reached)) != 0) {
+                this.claimed[reached] = this.stamp;
+                this.nextStates[this.nextSize] = reached;
+                this.nextLevels[this.nextSize] = level;
+                this.nextStarts[this.nextSize++] = start;
+            }
+        }
+    }
+
+    // Adds a level on top, which has no match yet and may not match empty at skipEmpty
+    private void pushLevel(int skipEmpty) {
+        if (this.levelCount == this.matchStart.length) {
+            this.matchStart = Arrays.copyOf(this.matchStart, this.levelCount * 2);
+            this.matchEnd = Arrays.copyOf(this.matchEnd, this.levelCount * 2);
+            this.skipEmptyAt = Arrays.copyOf(this.skipEmptyAt, this.levelCount * 2);
+        }
+        this.matchStart[this.levelCount] = -1;
+        this.skipEmptyAt[this.levelCount++] = skipEmpty;
+    }
+
+    // Renumbers the live levels from 0, so reported levels do not keep their slots
+    private void compact() {
+        int shift = this.first;
+        System.arraycopy(this.matchStart, shift, this.matchStart, 0, this.levelCount - shift);
+        System.arraycopy(this.matchEnd, shift, this.matchEnd, 0, this.levelCount - shift);
+        System.arraycopy(this.skipEmptyAt, shift, this.skipEmptyAt, 0, this.levelCount - shift);
+        for (int e = 0; e < this.size; e++) {
+            this.levels[e] -= shift;
+        }
+        this.levelCount -= shift;
+        this.first = 0;
+    }
+}
@@ -0,0 +1,169 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Partitions an alphabet into classes of characters that behave identically everywhere:
+ * two characters share a class if every state has the same targets on both. A compiled
+ * table then needs one column per class instead of one per character, which matters
+ * once transitions are given on ranges of a large alphabet.
+ *
+ * Sigma and the transitions of every state are ranges of characters, so the analysis
+ * never looks at single characters: the ends of all ranges cut the characters into
+ * segments that no range starts or ends inside, and every character of a segment
+ * behaves alike. The partition of the segments is refined one state at a time. A state
+ * splits a class into the segments that lead to the same set of targets from it, and
+ * the segments it has no transitions on keep their class, so the whole analysis takes
+ * time linear in the number of (state, segment) entries. The epsilon symbol 'e' is
+ * always a segment and a class of its own.
+ */
+final class SymbolClasses {
+    private SymbolClasses() {
+    }
+
+    /**
+     * Finds the classes of the characters of an NFA
+     * @param states all states of the NFA
+     * @param alphabet Sigma of the NFA
+     * @return the symbol map of the classes, over Sigma and every symbol a transition uses
+     */
+    static SymbolMap of(Collection<NFAState> states, CharRanges alphabet) {
+        // Every character where a range starts, or just after one ends, starts a segment
+        CharRanges used = new CharRanges(alphabet);
+        int[] cuts = new int[16];
+        int cutCount = 0;
+        cuts[cutCount++] = CompiledNFA.EPSILON;
+        cuts[cutCount++] = CompiledNFA.EPSILON + 1;
+        for (int i = 0; i < alphabet.rangeCount(); i++) {
+            cuts = grow(cuts, cutCount + 2);
+            cuts[cutCount++] = alphabet.lo(i);
+            cuts[cutCount++] = alphabet.hi(i) + 1;
+        }
+        for (NFAState state : states) {
+            for (int i = 0; i < state.rangeCount(); i++) {
+                used.add(state.rangeLo(i), state.rangeHi(i));
+                cuts = grow(cuts, cutCount + 2);
+                cuts[cutCount++] = state.rangeLo(i);
+                cuts[cutCount++] = state.rangeHi(i) + 1;
+            }
+        }
+        int[][] segments = segments(cuts, cutCount, used);
+        char[] lo = toChars(segments[0]);
+        char[] hi = toChars(segments[1]);
+
+        int[] classOf = new int[lo.length];
+        int next = 1;
+        int epsilon = Arrays.binarySearch(lo, CompiledNFA.EPSILON);
+        if (epsilon >= 0) {
+            classOf[epsilon] = next++;
+        }
+
+        HashMap<Set<NFAState>, Integer> destinations = new HashMap<Set<NFAState>, Integer>();
+        HashMap<Long, Integer> split = new HashMap<Long, Integer>();
+        for (NFAState state : states) {
+            destinations.clear();
+            split.clear();
+            for (int i = 0; i < state.rangeCount(); i++) {
+                Set<NFAState> targets = state.getTransitions(state.rangeLo(i));
+                Integer destination = destinations.get(targets);
+                if (destination == null) {
+                    destination = destinations.size();
+                    destinations.put(targets, destination);
+                }
+                // The range starts a segment and ends one, so it covers whole segments
+                for (int c = Arrays.binarySearch(lo, state.rangeLo(i)); c < lo.length && lo[c] <= state.rangeHi(i); c++) {
+                    long key = ((long) classOf[c] << 32) | destination;
+                    Integer refined = split.get(key);
+                    if (refined == null) {
+                        refined = next++;
+                        split.put(key, refined);
+                    }
+                    classOf[c] = refined;
+                }
+            }
+        }
+        return new SymbolMap(lo, hi, classOf);
+    }
+
+    /**
+     * Finds the coarsest classes that each lie within a single class of every one of
+     * several compiled automata, so each new class is one column of every part's table
+     * @param parts the automata
+     * @return the symbol map of the combined classes, over all characters of the parts
+     */
+    static SymbolMap common(List<CompiledNFA> parts) {
+        CharRanges used = new CharRanges();
+        int[] cuts = new int[16];
+        int cutCount = 0;
+        for (CompiledNFA part : parts) {
+            for (int i = 0; i < part.symbols.segmentCount(); i++) {
+                used.add(part.symbols.segmentLo(i), part.symbols.segmentHi(i));
+                cuts = grow(cuts, cutCount + 2);
+                cuts[cutCount++] = part.symbols.segmentLo(i);
+                cuts[cutCount++] = part.symbols.segmentHi(i) + 1;
+            }
+        }
+        int[][] segments = segments(cuts, cutCount, used);
+        char[] lo = toChars(segments[0]);
+        char[] hi = toChars(segments[1]);
+
+        // A segment lies within one segment of every part, so its first character stands for it
+        int[] classOf = new int[lo.length];
+        HashMap<Long, Integer> split = new HashMap<Long, Integer>();
+        for (CompiledNFA part : parts) {
+            split.clear();
+            int next = 0;
+            for (int c = 0; c < lo.length; c++) {
+                long key = ((long) classOf[c] << 32) | (part.symbolId(lo[c]) & 0xFFFFFFFFL);
+                Integer refined = split.get(key);
+                if (refined == null) {
+                    refined = next++;
+                    split.put(key, refined);
+                }
+                classOf[c] = refined;
+            }
+        }
+        return new SymbolMap(lo, hi, classOf);
+    }
+
+    /*
+     * Cuts the characters of used into segments at the given cut points, which must
+     * include both ends of every range of used.
+     * Returns { first characters, last characters } of the segments in ascending order.
+     */
+    private static int[][] segments(int[] cuts, int cutCount, CharRanges used) {
+        Arrays.sort(cuts, 0, cutCount);
+        int[] lo = new int[cutCount];
+        int[] hi = new int[cutCount];
+        int size = 0;
+        for (int i = 0; i < cutCount; i++) {
+            int from = cuts[i];
+            if ((i > 0 && from == cuts[i - 1]) || from > Character.MAX_VALUE || !used.contains((char) from)) {
+                continue;
+            }
+            int next = i + 1;
+            while (next < cutCount && cuts[next] == from) {
+                next++;
+            }
+            lo[size] = from;
+            hi[size++] = next < cutCount ? cuts[next] - 1 : Character.MAX_VALUE;
+        }
+        return new int[][] { Arrays.copyOf(lo, size), Arrays.copyOf(hi, size) };
+    }
+
+    private static int[] grow(int[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    private static char[] toChars(int[] values) {
+        char[] chars = new char[values.length];
+        for (int i = 0; i < values.length; i++) {
+            chars[i] = (char) values[i];
+        }
+        return chars;
+    }
+}
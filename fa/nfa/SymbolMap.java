@@ -0,0 +1,254 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Numbers the symbol classes of an automaton 0..k-1 and maps input characters to them.
+ * A class is a set of characters that every state treats the same way, so one column of
+ * a transition table serves all of them. Each class is represented by its smallest
+ * character, and classes are numbered in the order of their representatives.
+ *
+ * The characters are kept as sorted, disjoint segments, ranges of characters that all
+ * lie in one class, so a class spanning a large alphabet costs a few segments. Any char
+ * is mapped in O(1) by a two-level table: the high byte picks one of 256 pages, and the
+ * low byte an entry of the page. A page that lies wholly in one class, or wholly outside
+ * the symbols, is shared, so only pages where a segment starts or ends are stored and the
+ * table grows with the number of segments, not with the span of the alphabet. Immutable,
+ * so compiled automata derived from one another share it.
+ */
+final class SymbolMap {
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int[] ABSENT_PAGE = absentPage();
+
+    private final char[] lo; // first characters of the segments, ascending
+    private final char[] hi; // last characters of the segments, which never overlap
+    private final int[] segmentClass; // the class of each segment
+    private final int[] segments; // the segments of class id are segments[classStart[id] .. classStart[id + 1]), ascending
+    private final int[] classStart;
+    private final int[] classSize; // number of characters in each class
+    private final int[][] pages; // the class of c is pages[c >>> PAGE_BITS][c & 0xFF], or -1
+
+    /**
+     * Constructor for a symbol map in which every character is a class of its own
+     * @param symbols the distinct symbols in ascending order
+     */
+    SymbolMap(char[] symbols) {
+        this(symbols, symbols, identity(symbols.length));
+    }
+
+    /**
+     * Constructor for a symbol map over segments of characters
+     * @param lo the first characters of the segments, ascending
+     * @param hi the last characters of the segments, which do not overlap
+     * @param classOf labels such that segments i and j are in one class if classOf[i] == classOf[j];
+     * the labels need not be the class numbers, which are assigned here
+     */
+    SymbolMap(char[] lo, char[] hi, int[] classOf) {
+        this.lo = lo;
+        this.hi = hi;
+        int count = lo.length;
+
+        // Number the classes in the order of their smallest characters, which come first
+        this.segmentClass = new int[count];
+        int[] sizes = new int[count + 1];
+        long[] chars = new long[count + 1];
+        HashMap<Integer, Integer> numbers = new HashMap<Integer, Integer>();
+        for (int i = 0; i < count; i++) {
+            Integer id = numbers.get(classOf[i]);
+            if (id == null) {
+                id = numbers.size();
+                numbers.put(classOf[i], id);
+            }
+            this.segmentClass[i] = id;
+            sizes[id + 1]++;
+            chars[id] += hi[i] - lo[i] + 1;
+        }
+        int k = numbers.size();
+        this.classStart = new int[k + 1];
+        this.classSize = new int[k];
+        for (int id = 0; id < k; id++) {
+            this.classStart[id + 1] = this.classStart[id] + sizes[id + 1];
+            this.classSize[id] = (int) chars[id];
+        }
+        this.segments = new int[count];
+        int[] fill = Arrays.copyOf(this.classStart, k);
+        for (int i = 0; i < count; i++) {
+            this.segments[fill[this.segmentClass[i]]++] = i;
+        }
+        this.pages = pages(k);
+    }
+
+    // Builds the page table, sharing the pages that lie wholly in one class or outside every segment
+    private int[][] pages(int k) {
+        int[][] pages = new int[Character.MAX_VALUE / PAGE_SIZE + 1][];
+        int[][] uniform = new int[k][];
+        int s = 0;
+        for (int page = 0; page < pages.length; page++) {
+            int first = page << PAGE_BITS;
+            int last = first + PAGE_SIZE - 1;
+            while (s < this.lo.length && this.hi[s] < first) {
+                s++;
+            }
+            if (s == this.lo.length || this.lo[s] > last) {
+                pages[page] = ABSENT_PAGE;
+            } else if (this.lo[s] <= first && this.hi[s] >= last) {
+                int id = this.segmentClass[s];
+                if (uniform[id] == null) {
+                    uniform[id] = new int[PAGE_SIZE];
+                    Arrays.fill(uniform[id], id);
+                }
+                pages[page] = uniform[id];
+            } else {
+                int[] entries = absentPage();
+                for (int t = s; t < this.lo.length && this.lo[t] <= last; t++) {
+                    Arrays.fill(entries, Math.max(this.lo[t], first) - first, Math.min(this.hi[t], last) - first + 1,
+                            this.segmentClass[t]);
+                }
+                pages[page] = entries;
+            }
+        }
+        return pages;
+    }
+
+    private static int[] absentPage() {
+        int[] page = new int[PAGE_SIZE];
+        Arrays.fill(page, -1);
+        return page;
+    }
+
+    private static int[] identity(int length) {
+        int[] labels = new int[length];
+        for (int i = 0; i < length; i++) {
+            labels[i] = i;
+        }
+        return labels;
+    }
+
+    /**
+     * Creates a symbol map from the class of every character
+     * @param chars the distinct characters in ascending order
+     * @param classOf labels such that chars[i] and chars[j] are in one class if classOf[i] == classOf[j];
+     * the labels need not be the class numbers, which are assigned here
+     * @return the symbol map, in which runs of consecutive characters with one label are one segment
+     */
+    static SymbolMap of(char[] chars, int[] classOf) {
+        char[] lo = new char[chars.length];
+        char[] hi = new char[chars.length];
+        int[] labels = new int[chars.length];
+        int size = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (size > 0 && chars[i] == hi[size - 1] + 1 && classOf[i] == labels[size - 1]) {
+                hi[size - 1] = chars[i];
+            } else {
+                lo[size] = chars[i];
+                hi[size] = chars[i];
+                labels[size++] = classOf[i];
+            }
+        }
+        return new SymbolMap(Arrays.copyOf(lo, size), Arrays.copyOf(hi, size), Arrays.copyOf(labels, size));
+    }
+
+    /**
+     * @return the number of classes
+     */
+    int size() {
+        return this.classStart.length - 1;
+    }
+
+    /**
+     * @param id a class number
+     * @return the smallest character of the class, which stands for all of them
+     */
+    char symbol(int id) {
+        return this.lo[this.segments[this.classStart[id]]];
+    }
+
+    /**
+     * @param id a class number
+     * @return the number of characters in the class
+     */
+    int classSize(int id) {
+        return this.classSize[id];
+    }
+
+    /**
+     * @param id a class number
+     * @return the characters of the class in ascending order
+     */
+    char[] members(int id) {
+        char[] members = new char[this.classSize[id]];
+        int size = 0;
+        for (int s = this.classStart[id]; s < this.classStart[id + 1]; s++) {
+            for (int c = this.lo[this.segments[s]]; c <= this.hi[this.segments[s]]; c++) {
+                members[size++] = (char) c;
+            }
+        }
+        return members;
+    }
+
+    /**
+     * @return the number of segments, ranges of characters of one class
+     */
+    int segmentCount() {
+        return this.lo.length;
+    }
+
+    /**
+     * @param i an index below segmentCount()
+     * @return the first character of the i-th segment in ascending order
+     */
+    char segmentLo(int i) {
+        return this.lo[i];
+    }
+
+    /**
+     * @param i an index below segmentCount()
+     * @return the last character of the i-th segment
+     */
+    char segmentHi(int i) {
+        return this.hi[i];
+    }
+
+    /**
+     * @param i an index below segmentCount()
+     * @return the class of every character of the i-th segment
+     */
+    int segmentClass(int i) {
+        return this.segmentClass[i];
+    }
+
+    /**
+     * @return the number of characters that have a class
+     */
+    int charCount() {
+        int count = 0;
+        for (int id = 0; id < size(); id++) {
+            count += this.classSize[id];
+        }
+        return count;
+    }
+
+    /**
+     * @return every character that has a class, in ascending order
+     */
+    char[] chars() {
+        char[] chars = new char[charCount()];
+        int size = 0;
+        for (int i = 0; i < this.lo.length; i++) {
+            for (int c = this.lo[i]; c <= this.hi[i]; c++) {
+                chars[size++] = (char) c;
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * @param c an input character
+     * @return the number of the class of c, or -1 if c is not one of the symbols
+     */
+    int id(char c) {
+        return this.pages[c >>> PAGE_BITS][c & (PAGE_SIZE - 1)];
+    }
+}
@@ -0,0 +1,71 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the trim part of an NFA: the states that can be reached from the start state
+ * and can themselves reach a final state. Every other state only ever carries runs that
+ * will be rejected, so dropping it (and every transition touching it) leaves the
+ * language unchanged. Epsilon transitions count as edges in both directions of the search.
+ */
+final class Trim {
+
+    private Trim() {
+    }
+
+    /**
+     * Removes the unreachable and dead states of a compiled NFA
+     * @param nfa the automaton
+     * @param sigma the alphabet of the result
+     * @return an NFA with the same alphabet, the live states and the transitions between them
+     */
+    static NFA apply(CompiledNFA nfa, CharRanges sigma) {
+        NFABuilder builder = new NFABuilder();
+        for (int i = 0; i < sigma.rangeCount(); i++) {
+            builder.addSigmaRange(sigma.lo(i), sigma.hi(i));
+        }
+        int n = nfa.stateCount();
+        int k = nfa.symbolCount();
+        if (nfa.start < 0) {
+            return builder.build();
+        }
+
+        int[][] graph = nfa.stateGraph();
+        boolean[] finals = new boolean[n];
+        for (int s = 0; s < n; s++) {
+            finals[s] = nfa.isFinal(s);
+        }
+        boolean[] keep = Reachability.live(graph[0], graph[1], nfa.start, finals);
+
+        for (int s = 0; s < n; s++) {
+            if (keep[s]) {
+                builder.addStates(nfa.stateName(s));
+                if (finals[s]) {
+                    builder.setFinal(nfa.stateName(s));
+                }
+            }
+        }
+        builder.setStart(nfa.stateName(nfa.start));
+
+        // The 'e' row of the compiled table holds the epsilon transitions, so copying every row copies them too.
+        // A row stands for every segment of its symbol class, which all get its targets in one call.
+        for (int s = 0; s < n; s++) {
+            if (!keep[s]) {
+                continue;
+            }
+            String[][] byClass = new String[k][];
+            for (int sym = 0; sym < k; sym++) {
+                List<String> to = new ArrayList<String>();
+                for (int i = nfa.offsets[s * k + sym]; i < nfa.offsets[s * k + sym + 1]; i++) {
+                    if (keep[nfa.targets[i]]) {
+                        to.add(nfa.stateName(nfa.targets[i]));
+                    }
+                }
+                byClass[sym] = to.toArray(new String[0]);
+            }
+            builder.addTransitions(nfa.stateName(s), nfa.symbols, byClass);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,98 @@
+package fa.nfa;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BitsetKernel on the incubating Vector API, processing as many words per instruction
+ * as the widest vectors of the CPU hold. Words left over after the last full vector
+ * are handled one at a time.
+ *
+ * This class is only ever loaded by name from BitsetKernel.select(), once it is known
+ * that the jdk.incubator.vector module is present.
+ */
+final class VectorKernel implements BitsetKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Constructor for the vector kernel
+     * @throws IllegalStateException if the CPU's vectors hold only one long, so the scalar kernel is as fast
+     */
+    VectorKernel() {
+        if (SPECIES.length() < 2) {
+            throw new IllegalStateException("no vectors wider than one long");
+        }
+    }
+
+    @Override
+    public void or(long[] set, long[] rows, int from) {
+        int w = 0;
+        for (int bound = SPECIES.loopBound(set.length); w < bound; w += SPECIES.length()) {
+            LongVector.fromArray(SPECIES, set, w).or(LongVector.fromArray(SPECIES, rows, from + w)).intoArray(set, w);
+        }
+        for (; w < set.length; w++) {
+            set[w] |= rows[from + w];
+        }
+    }
+
+    @Override
+    public boolean and(long[] set, long[] mask) {
+        int w = 0;
+        LongVector any = LongVector.zero(SPECIES);
+        for (int bound = SPECIES.loopBound(set.length); w < bound; w += SPECIES.length()) {
+            LongVector kept = LongVector.fromArray(SPECIES, set, w).and(LongVector.fromArray(SPECIES, mask, w));
+            kept.intoArray(set, w);
+            any = any.or(kept);
+        }
+        long rest = any.reduceLanes(VectorOperators.OR);
+        for (; w < set.length; w++) {
+            set[w] &= mask[w];
+            rest |= set[w];
+        }
+        return rest != 0;
+    }
+
+    @Override
+    public boolean intersects(long[] a, long[] b) {
+        int w = 0;
+        for (int bound = SPECIES.loopBound(a.length); w < bound; w += SPECIES.length()) {
+            if (LongVector.fromArray(SPECIES, a, w).and(LongVector.fromArray(SPECIES, b, w))
+                    .compare(VectorOperators.NE, 0L).anyTrue()) {
+                return true;
+            }
+        }
+        for (; w < a.length; w++) {
+            if ((a[w] & b[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Counts bits with the classic SWAR reduction in every lane (the Vector API of Java 17
+     * has no lane-wise bit count): pairs, then nibbles, then bytes are summed in place,
+     * until the lowest byte of each lane holds that lane's count.
+     */
+    @Override
+    public int popCount(long[] set) {
+        int w = 0;
+        LongVector total = LongVector.zero(SPECIES);
+        for (int bound = SPECIES.loopBound(set.length); w < bound; w += SPECIES.length()) {
+            LongVector v = LongVector.fromArray(SPECIES, set, w);
+            v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+            v = v.and(0x3333333333333333L).add(v.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+            v = v.add(v.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+            v = v.add(v.lanewise(VectorOperators.LSHR, 8));
+            v = v.add(v.lanewise(VectorOperators.LSHR, 16));
+            v = v.add(v.lanewise(VectorOperators.LSHR, 32));
+            total = total.add(v.and(0x7FL));
+        }
+        int count = (int) total.reduceLanes(VectorOperators.ADD);
+        for (; w < set.length; w++) {
+            count += Long.bitCount(set[w]);
+        }
+        return count;
+    }
+}
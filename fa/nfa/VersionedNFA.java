@@ -0,0 +1,599 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * An automaton that can be changed while other threads keep matching against it.
+ * Every version is an immutable Snapshot, and a new version is published with a single
+ * volatile write. A reader pins the version it wants with snapshot() and can run any
+ * number of inputs on it. Readers never take a lock or wait for a writer, and a pinned
+ * snapshot never changes, however many versions are published after it.
+ *
+ * Writers collect changes in a Batch and publish them together. Either all of them
+ * become visible in one new version or, if one is invalid, none of them does. Batches
+ * from several threads are applied one at a time, each on top of the latest version.
+ *
+ * A version keeps each state's transitions as an immutable row of target ids. A new
+ * version copies the array of rows and replaces only the rows of the states the batch
+ * changed, so every other row is shared with the version before it. The same goes for
+ * the names, finals and Sigma when the batch leaves them alone. The compiled tables and
+ * their literal prefilter are built by the writer before the version is published, so a
+ * reader never compiles.
+ */
+public final class VersionedNFA {
+    private final Object writeLock = new Object();
+    private volatile Snapshot current;
+
+    /**
+     * Constructor for an automaton with no states, at version 0
+     */
+    public VersionedNFA() {
+        this.current = new Draft(null).finish(0);
+    }
+
+    /**
+     * Constructor for an automaton that starts out as a copy of an NFA, at version 0.
+     * Later changes to the NFA do not affect this automaton.
+     * @param nfa the automaton to copy
+     */
+    public VersionedNFA(NFA nfa) {
+        CompiledNFA compiled = nfa.compile();
+        compiled.prefilter(); // as in Draft.finish, so the first reader of version 0 does not build it
+        this.current = Snapshot.of(compiled, nfa.sigmaRanges());
+    }
+
+    /**
+     * Pins the latest version. The snapshot stays as it is while newer versions are
+     * published, so a run of several inputs can see one consistent automaton.
+     * @return the latest published snapshot
+     */
+    public Snapshot snapshot() {
+        return this.current;
+    }
+
+    /**
+     * Runs the latest version on an input
+     * @param s the input string
+     * @return true if the latest version accepts s
+     */
+    public boolean accepts(CharSequence s) {
+        return this.current.accepts(s);
+    }
+
+    /**
+     * Runs the latest version on an input
+     * @param s the input string
+     * @return the largest number of states active at once while reading s
+     */
+    public int maxCopies(CharSequence s) {
+        return this.current.maxCopies(s);
+    }
+
+    /**
+     * Starts a batch of changes, which become visible when the batch is published
+     * @return a new batch, which must not be shared between threads
+     */
+    public Batch edit() {
+        return new Batch(this);
+    }
+
+    /**
+     * One immutable version of a VersionedNFA. Instances are thread-safe.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final String[] names;
+        private final Row[] rows;
+        private final long[] finals;
+        private final int start;
+        private final CharRanges sigma; // never modified
+        private final Set<Character> sigmaView;
+        private final CompiledNFA compiled;
+
+        private Snapshot(long version, String[] names, Row[] rows, long[] finals, int start,
+                CharRanges sigma, CompiledNFA compiled) {
+            this.version = version;
+            this.names = names;
+            this.rows = rows;
+            this.finals = finals;
+            this.start = start;
+            this.sigma = sigma;
+            this.sigmaView = Collections.unmodifiableSet(sigma);
+            this.compiled = compiled;
+        }
+
+        // Reads the rows back out of a compiled automaton; the segments of a class share one target array
+        private static Snapshot of(CompiledNFA compiled, CharRanges alphabet) {
+            int n = compiled.stateCount();
+            int k = compiled.symbolCount();
+            SymbolMap symbols = compiled.symbols;
+            Row[] rows = new Row[n];
+            for (int state = 0; state < n; state++) {
+                int[][] byClass = new int[k][];
+                char[] lo = new char[symbols.segmentCount()];
+                char[] hi = new char[lo.length];
+                int[][] targets = new int[lo.length][];
+                int size = 0;
+                for (int i = 0; i < lo.length; i++) {
+                    int sym = symbols.segmentClass(i);
+                    int from = compiled.offsets[state * k + sym];
+                    int to = compiled.offsets[state * k + sym + 1];
+                    if (from < to) {
+                        if (byClass[sym] == null) {
+                            byClass[sym] = Arrays.copyOfRange(compiled.targets, from, to);
+                        }
+                        lo[size] = symbols.segmentLo(i);
+                        hi[size] = symbols.segmentHi(i);
+                        targets[size++] = byClass[sym];
+                    }
+                }
+                rows[state] = size == 0 ? Row.EMPTY
+                        : new Row(Arrays.copyOf(lo, size), Arrays.copyOf(hi, size), Arrays.copyOf(targets, size));
+            }
+            return new Snapshot(0, compiled.stateNames.clone(), rows, compiled.finalBits.clone(),
+                    compiled.start, new CharRanges(alphabet), compiled);
+        }
+
+        /**
+         * @return the number of batches published before this version; the first version is 0
+         */
+        public long version() {
+            return this.version;
+        }
+
+        /**
+         * @return the compiled form of this version, for searching, streaming and the other
+         * operations of CompiledNFA
+         */
+        public CompiledNFA compiled() {
+            return this.compiled;
+        }
+
+        /**
+         * @param s the input string
+         * @return true if this version accepts s
+         */
+        public boolean accepts(CharSequence s) {
+            return this.compiled.accepts(s);
+        }
+
+        /**
+         * @param s the input string
+         * @return the largest number of states active at once while this version reads s
+         */
+        public int maxCopies(CharSequence s) {
+            return this.compiled.maxCopies(s);
+        }
+
+        /**
+         * @return Sigma of this version, unmodifiable
+         */
+        public Set<Character> getSigma() {
+            return this.sigmaView;
+        }
+
+        /**
+         * Copies this version into a new NFA, which can be changed without affecting it
+         * @return the copy
+         */
+        public NFA toNFA() {
+            NFABuilder builder = new NFABuilder().addStates(this.names);
+            for (int i = 0; i < this.sigma.rangeCount(); i++) {
+                builder.addSigmaRange(this.sigma.lo(i), this.sigma.hi(i));
+            }
+            if (this.start >= 0) {
+                builder.setStart(this.names[this.start]);
+            }
+            for (int state = 0; state < this.names.length; state++) {
+                if (isFinal(this.finals, state)) {
+                    builder.setFinal(this.names[state]);
+                }
+                // Ranges sharing a target array share the array of names
+                Row row = this.rows[state];
+                String[][] to = new String[row.lo.length][];
+                for (int i = 0; i < row.lo.length; i++) {
+                    if (i > 0 && row.targets[i] == row.targets[i - 1]) {
+                        to[i] = to[i - 1];
+                        continue;
+                    }
+                    to[i] = new String[row.targets[i].length];
+                    for (int j = 0; j < to[i].length; j++) {
+                        to[i][j] = this.names[row.targets[i][j]];
+                    }
+                }
+                builder.addTransitions(this.names[state], row.lo, row.hi, to);
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Changes to a VersionedNFA that are published together as one new version.
+     * Like NFABuilder, a batch throws an IllegalArgumentException for an unknown state
+     * name or a symbol that is not in Sigma, but only when it is published, since the
+     * names are looked up in the version the batch is applied to. States and symbols
+     * added earlier in the same batch can be used by later changes.
+     * A batch publishes once; it cannot be used after publish().
+     */
+    public static final class Batch {
+        private final VersionedNFA target;
+        private List<Consumer<Draft>> changes = new ArrayList<Consumer<Draft>>();
+
+        private Batch(VersionedNFA target) {
+            this.target = target;
+        }
+
+        /**
+         * Adds symbols to Sigma
+         * @param symbols the symbols to add
+         * @return this batch
+         */
+        public Batch addSigma(char... symbols) {
+            char[] copy = symbols.clone();
+            return add(draft -> {
+                for (char symbol : copy) {
+                    draft.addSigma(symbol, symbol);
+                }
+            });
+        }
+
+        /**
+         * Adds every character from first to last to Sigma
+         * @param first the smallest character of the range
+         * @param last the largest character of the range
+         * @return this batch
+         */
+        public Batch addSigmaRange(char first, char last) {
+            return add(draft -> draft.addSigma(first, last));
+        }
+
+        /**
+         * Adds states; names that already have a state are skipped
+         * @param names the labels of the new states
+         * @return this batch
+         */
+        public Batch addStates(String... names) {
+            String[] copy = names.clone();
+            return add(draft -> draft.addStates(copy));
+        }
+
+        /**
+         * Sets the start state
+         * @param name the label of a state
+         * @return this batch
+         */
+        public Batch setStart(String name) {
+            return add(draft -> draft.setStart(name));
+        }
+
+        /**
+         * Marks states as accepting
+         * @param names the labels of states
+         * @return this batch
+         */
+        public Batch setFinal(String... names) {
+            String[] copy = names.clone();
+            return add(draft -> draft.setFinal(copy));
+        }
+
+        /**
+         * Adds transitions from one state to several states on one symbol
+         * @param fromState the label of the state where the transitions start
+         * @param toStates the labels of the states where they end
+         * @param onSymb a symbol in Sigma, or 'e' for epsilon transitions
+         * @return this batch
+         */
+        public Batch addTransitions(String fromState, Collection<String> toStates, char onSymb) {
+            List<String> copy = new ArrayList<String>(toStates);
+            return add(draft -> draft.addTransitions(fromState, copy, draft.symbol(onSymb)));
+        }
+
+        /**
+         * Adds transitions from one state to several states on every symbol of Sigma from
+         * first to last. The symbol 'e' is left out of the range, since a transition on it is
+         * an epsilon transition.
+         * @param fromState the label of the state where the transitions start
+         * @param toStates the labels of the states where they end
+         * @param first the smallest symbol of the range
+         * @param last the largest symbol of the range
+         * @return this batch
+         */
+        public Batch addTransitions(String fromState, Collection<String> toStates, char first, char last) {
+            List<String> copy = new ArrayList<String>(toStates);
+            return add(draft -> draft.addTransitions(fromState, copy, draft.range(first, last)));
+        }
+
+        /**
+         * Applies the changes to the latest version and publishes the result as the next
+         * version. Readers keep running on the version they pinned while this compiles.
+         * @return the published snapshot, or the latest one unchanged if the batch is empty
+         * @throws IllegalArgumentException if a change names an unknown state or symbol, in which case nothing is published
+         */
+        public Snapshot publish() {
+            checkNotPublished();
+            Snapshot published;
+            synchronized (this.target.writeLock) {
+                Snapshot base = this.target.current;
+                if (this.changes.isEmpty()) {
+                    published = base;
+                } else {
+                    Draft draft = new Draft(base);
+                    for (Consumer<Draft> change : this.changes) {
+                        change.accept(draft);
+                    }
+                    published = draft.finish(base.version + 1);
+                    this.target.current = published;
+                }
+            }
+            this.changes = null;
+            return published;
+        }
+
+        private Batch add(Consumer<Draft> change) {
+            checkNotPublished();
+            this.changes.add(change);
+            return this;
+        }
+
+        private void checkNotPublished() {
+            if (this.changes == null) {
+                throw new IllegalStateException("publish() was already called");
+            }
+        }
+    }
+
+    /*
+     * The outgoing transitions of one state: ranges lo[i]..hi[i] ascending and disjoint,
+     * and targets[i] the ids of the targets on every symbol of range i, ascending and
+     * without duplicates. Never modified, so rows and their target arrays are shared
+     * between versions.
+     */
+    private static final class Row {
+        static final Row EMPTY = new Row(new char[0], new char[0], new int[0][]);
+
+        final char[] lo;
+        final char[] hi;
+        final int[][] targets;
+
+        Row(char[] lo, char[] hi, int[][] targets) {
+            this.lo = lo;
+            this.hi = hi;
+            this.targets = targets;
+        }
+
+        // Returns a row that also has the transitions to ids on each of the ranges, or this row if it has them all
+        Row with(CharRanges onSymbs, int[] ids) {
+            char[] addLo = onSymbs.los();
+            int[][] added = new int[addLo.length][];
+            Arrays.fill(added, ids);
+            int capacity = 2 * (this.lo.length + addLo.length);
+            char[] lo = new char[capacity];
+            char[] hi = new char[capacity];
+            int[][] targets = new int[capacity][];
+            int size = CharRanges.merge(this.lo, this.hi, this.targets, addLo, onSymbs.his(), added,
+                    new int[0], Row::union, lo, hi, targets);
+            if (size == this.lo.length && Arrays.equals(this.lo, 0, size, lo, 0, size)
+                    && Arrays.equals(this.hi, 0, size, hi, 0, size) && sameTargets(targets, size)) {
+                return this;
+            }
+            return new Row(Arrays.copyOf(lo, size), Arrays.copyOf(hi, size), Arrays.copyOf(targets, size));
+        }
+
+        private boolean sameTargets(int[][] targets, int size) {
+            for (int i = 0; i < size; i++) {
+                if (targets[i] != this.targets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Merges two ascending id arrays, returning a itself if b adds nothing to it, or b if a is empty
+        private static int[] union(int[] a, int[] b) {
+            if (a.length == 0) {
+                return b;
+            }
+            int[] merged = new int[a.length + b.length];
+            int i = 0;
+            int j = 0;
+            int size = 0;
+            while (i < a.length || j < b.length) {
+                if (j == b.length || (i < a.length && a[i] < b[j])) {
+                    merged[size++] = a[i++];
+                } else if (i == a.length || b[j] < a[i]) {
+                    merged[size++] = b[j++];
+                } else {
+                    merged[size++] = a[i++];
+                    j++;
+                }
+            }
+            return size == a.length ? a : Arrays.copyOf(merged, size);
+        }
+    }
+
+    /*
+     * The next version while a batch is applied to it. Every array of the base version is
+     * copied the first time the batch changes it, and only then, so whatever the batch
+     * leaves alone is shared.
+     */
+    private static final class Draft {
+        private final Snapshot base;
+        private final HashMap<String, Integer> added = new HashMap<String, Integer>(); // states new in this batch
+        private String[] names;
+        private Row[] rows;
+        private long[] finals;
+        private int start;
+        private CharRanges sigma;
+        private int count;
+        private boolean ownRows;
+        private boolean ownFinals;
+        private boolean ownSigma;
+
+        Draft(Snapshot base) {
+            this.base = base;
+            this.names = base == null ? new String[0] : base.names;
+            this.rows = base == null ? new Row[0] : base.rows;
+            this.finals = base == null ? new long[0] : base.finals;
+            this.start = base == null ? -1 : base.start;
+            this.sigma = base == null ? new CharRanges() : base.sigma;
+            this.count = this.names.length;
+        }
+
+        void addSigma(char first, char last) {
+            if (!this.ownSigma) {
+                this.sigma = new CharRanges(this.sigma);
+                this.ownSigma = true;
+            }
+            this.sigma.add(first, last);
+        }
+
+        void addStates(String[] names) {
+            for (String name : names) {
+                if (id(name) >= 0) {
+                    continue;
+                }
+                if (this.count == this.names.length || !this.ownRows) {
+                    int capacity = Math.max(this.count + names.length, this.count * 2);
+                    this.names = Arrays.copyOf(this.names, capacity);
+                    this.rows = Arrays.copyOf(this.rows, capacity);
+                    this.ownRows = true;
+                }
+                this.names[this.count] = name;
+                this.rows[this.count] = Row.EMPTY;
+                this.added.put(name, this.count++);
+            }
+        }
+
+        void setStart(String name) {
+            this.start = state(name);
+        }
+
+        void setFinal(String[] names) {
+            for (String name : names) {
+                int state = state(name);
+                if (!this.ownFinals || this.finals.length < CompiledNFA.words(this.count)) {
+                    this.finals = Arrays.copyOf(this.finals, Math.max(this.finals.length, CompiledNFA.words(this.count)));
+                    this.ownFinals = true;
+                }
+                this.finals[state >>> 6] |= 1L << state;
+            }
+        }
+
+        CharRanges symbol(char onSymb) {
+            if (!this.sigma.contains(onSymb) && onSymb != CompiledNFA.EPSILON) {
+                throw new IllegalArgumentException("symbol " + onSymb + " is not in Sigma");
+            }
+            CharRanges symbol = new CharRanges();
+            symbol.add(onSymb, onSymb);
+            return symbol;
+        }
+
+        CharRanges range(char first, char last) {
+            CharRanges symbols = NFA.symbolsBetween(this.sigma, first, last);
+            if (symbols.isEmpty()) {
+                throw new IllegalArgumentException("no symbol of Sigma from " + first + " to " + last);
+            }
+            return symbols;
+        }
+
+        void addTransitions(String fromState, List<String> toStates, CharRanges symbols) {
+            int from = state(fromState);
+            int[] ids = new int[toStates.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = state(toStates.get(i));
+            }
+            Arrays.sort(ids);
+            int size = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (size == 0 || ids[i] != ids[size - 1]) {
+                    ids[size++] = ids[i];
+                }
+            }
+            if (size == 0) {
+                return;
+            }
+            ids = Arrays.copyOf(ids, size);
+
+            Row row = this.rows[from].with(symbols, ids);
+            if (row != this.rows[from]) {
+                if (!this.ownRows) {
+                    this.rows = this.rows.clone();
+                    this.ownRows = true;
+                }
+                this.rows[from] = row;
+            }
+        }
+
+        // The names of the base version are looked up in its compiled table, which numbers them the same way
+        private int id(String name) {
+            Integer id = this.added.get(name);
+            if (id != null) {
+                return id;
+            }
+            return this.base == null ? -1 : this.base.compiled.stateId(name);
+        }
+
+        private int state(String name) {
+            int id = id(name);
+            if (id < 0) {
+                throw new IllegalArgumentException("no state named " + name);
+            }
+            return id;
+        }
+
+        // Builds the snapshot, compiling it through temporary NFAStates numbered like the rows
+        Snapshot finish(long version) {
+            int n = this.count;
+            String[] names = this.names.length == n ? this.names : Arrays.copyOf(this.names, n);
+            Row[] rows = this.rows.length == n ? this.rows : Arrays.copyOf(this.rows, n);
+            long[] finals = this.finals.length >= CompiledNFA.words(n) ? this.finals
+                    : Arrays.copyOf(this.finals, CompiledNFA.words(n));
+
+            NFAState[] states = new NFAState[n];
+            for (int state = 0; state < n; state++) {
+                states[state] = new NFAState(names[state]);
+            }
+            HashSet<NFAState> finalStates = new HashSet<NFAState>();
+            for (int state = 0; state < n; state++) {
+                if (isFinal(finals, state)) {
+                    finalStates.add(states[state]);
+                }
+                // Ranges sharing a target array share the state array, added in one pass
+                Row row = rows[state];
+                if (row.lo.length == 0) {
+                    continue;
+                }
+                NFAState[][] to = new NFAState[row.lo.length][];
+                int[] last = null;
+                for (int i = 0; i < row.lo.length; i++) {
+                    if (row.targets[i] != last) {
+                        last = row.targets[i];
+                        to[i] = new NFAState[last.length];
+                        for (int j = 0; j < last.length; j++) {
+                            to[i][j] = states[last[j]];
+                        }
+                    } else {
+                        to[i] = to[i - 1];
+                    }
+                }
+                states[state].addTransitions(row.lo, row.hi, to);
+            }
+            CompiledNFA compiled = CompiledNFA.compile(Arrays.asList(states),
+                    this.start < 0 ? null : states[this.start], finalStates, this.sigma);
+            compiled.prefilter(); // otherwise the first reader of the version would build it
+            return new Snapshot(version, names, rows, finals, this.start, this.sigma, compiled);
+        }
+    }
+
+    private static boolean isFinal(long[] finals, int state) {
+        return (finals[state >>> 6] & (1L << state)) != 0;
+    }
+}
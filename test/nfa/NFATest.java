@@ -2,14 +2,54 @@ package test.nfa;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import fa.nfa.CompiledNFA;
+import fa.nfa.LazyDFA;
+import fa.nfa.MatchSpan;
+import fa.nfa.Matcher;
+import fa.nfa.MinimalDFA;
 import fa.nfa.NFA;
+import fa.nfa.NFABuilder;
+import fa.nfa.NFAState;
+import fa.nfa.OffHeapNFA;
+import fa.nfa.PatternSet;
+import fa.nfa.SimulationListener;
+import fa.nfa.SimulationMetrics;
+import fa.nfa.VersionedNFA;
 
 public class NFATest {
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private NFA nfa1() {
 		NFA nfa = new NFA();
 		
@@ -100,6 +140,445 @@ public class NFATest {
 		assertEquals(nfa.maxCopies("2"), 1);
 		System.out.println("nfa1 maxCopies done");
 	}
+
+	@Test
+	public void test1_7() {
+		NFA nfa = nfa1();
+		CompiledNFA compiled = nfa.compile();
+		assertEquals(compiled.stateCount(), 2);
+		assertEquals(compiled.stateName(compiled.startState()), "a");
+		assertTrue(compiled.isFinal(compiled.stateId("b")));
+		assertEquals(closureNames(compiled, "b"), Set.of("a", "b"));
+		assertSameAsBuilder(nfa, "01e2");
+		System.out.println("nfa1 compile done");
+	}
+
+	@Test
+	public void test1_8() {
+		NFA nfa = nfa1();
+		Matcher matcher = nfa.matcher();
+		assertFalse(matcher.isAccepting());
+		assertEquals(matcher.currentCopies(), 1);
+
+		matcher.feed('1');
+		assertTrue(matcher.isAccepting());
+		assertEquals(matcher.currentCopies(), 2);
+		matcher.feed("x0101x", 1, 5);
+		assertTrue(matcher.isAccepting());
+		matcher.feed(CharBuffer.wrap("10"));
+		assertFalse(matcher.isAccepting());
+		assertEquals(matcher.position(), 7);
+		assertEquals(matcher.maxCopies(), nfa.maxCopies("1010110"));
+
+		CharBuffer direct = ByteBuffer.allocateDirect(8).asCharBuffer();
+		direct.put("011").flip();
+		matcher.reset();
+		matcher.feed(direct);
+		assertFalse(direct.hasRemaining());
+		assertEquals(matcher.isAccepting(), nfa.accepts("011"));
+		assertEquals(matcher.maxCopies(), nfa.maxCopies("011"));
+
+		// Every prefix of a long stream agrees with accepts on the same prefix
+		matcher.reset();
+		String stream = "0110100111010";
+		for (int i = 0; i < stream.length(); i++) {
+			matcher.feed(stream.charAt(i));
+			assertEquals(nfa.accepts(stream.substring(0, i + 1)), matcher.isAccepting());
+		}
+		System.out.println("nfa1 matcher done");
+	}
+
+	@Test
+	public void test1_9() throws IOException {
+		NFA nfa = nfa1();
+		Path file = folder.newFile("input.txt").toPath();
+
+		Files.writeString(file, "0110101", StandardCharsets.UTF_8);
+		assertTrue(nfa.acceptsFile(file));
+		Files.writeString(file, "01\u00e91", StandardCharsets.UTF_8);
+		assertFalse(nfa.acceptsFile(file));
+
+		// '\u00e9' takes bytes 2 and 3, so the substrings ending in 1 end at byte offsets 2 and 5
+		List<Long> ends = new ArrayList<>();
+		assertEquals(nfa.searchFile(file, ends::add), 2);
+		assertEquals(ends, List.of(2L, 5L));
+
+		// A code point outside the BMP and a malformed byte each count as a single foreign character
+		Files.write(file, new byte[] { '1', (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, '1', (byte) 0xFF, '0', '1' });
+		ends.clear();
+		assertEquals(nfa.searchFile(file, ends::add), 3);
+		assertEquals(ends, List.of(1L, 6L, 9L));
+
+		Files.write(file, new byte[0]);
+		assertFalse(nfa.acceptsFile(file));
+
+		// Malformed input decodes like new String(bytes, UTF_8): one U+FFFD per maximal ill-formed subpart
+		List<byte[]> malformed = new ArrayList<>();
+		malformed.add(new byte[] { (byte) 0xE0, (byte) 0x80, (byte) 0x80 });
+		malformed.add(new byte[] { (byte) 0xF4, (byte) 0x90, (byte) 0x80 });
+		malformed.add(new byte[] { (byte) 0xED, (byte) 0xA0, (byte) 0x80, 'a' });
+		malformed.add(new byte[] { (byte) 0xF0, (byte) 0x8F, (byte) 0xBF, (byte) 0xBF });
+		malformed.add(new byte[] { (byte) 0xE1, (byte) 0x80, 'a', (byte) 0xF1, (byte) 0x80, (byte) 0x80 });
+		malformed.add(new byte[] { (byte) 0xC0, (byte) 0xAF, (byte) 0xF8, (byte) 0x80, (byte) 0xC2 });
+		byte[] pool = { 'a', '0', (byte) 0x80, (byte) 0x8F, (byte) 0x90, (byte) 0x9F, (byte) 0xA0, (byte) 0xBF,
+				(byte) 0xC0, (byte) 0xC2, (byte) 0xDF, (byte) 0xE0, (byte) 0xE1, (byte) 0xED, (byte) 0xEF,
+				(byte) 0xF0, (byte) 0xF1, (byte) 0xF4, (byte) 0xF5, (byte) 0xFF };
+		Random random = new Random(9);
+		for (int t = 0; t < 300; t++) {
+			byte[] bytes = new byte[1 + random.nextInt(8)];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = pool[random.nextInt(pool.length)];
+			}
+			malformed.add(bytes);
+		}
+		assertEquals("\uFFFD\uFFFD\uFFFD", new String(malformed.get(0), StandardCharsets.UTF_8));
+		for (byte[] bytes : malformed) {
+			String decoded = new String(bytes, StandardCharsets.UTF_8);
+			Files.write(file, bytes);
+			assertTrue(decoded, exactly(decoded).acceptsFile(file));
+			assertEquals(decoded, exactly(decoded).accepts(decoded), exactly(decoded).acceptsFile(file));
+			assertEquals(decoded, nfa.accepts(decoded), nfa.acceptsFile(file));
+		}
+		System.out.println("nfa1 file scan done");
+	}
+
+	// An NFA accepting s and nothing else; s must not contain 'e'
+	private static NFA exactly(String s) {
+		NFABuilder builder = new NFABuilder().addSigma(s.toCharArray());
+		for (int i = 0; i <= s.length(); i++) {
+			builder.addStates("q" + i);
+		}
+		builder.setStart("q0").setFinal("q" + s.length());
+		for (int i = 0; i < s.length(); i++) {
+			builder.addTransitions("q" + i, List.of("q" + (i + 1)), s.charAt(i));
+		}
+		return builder.build();
+	}
+
+	// Rounds a section size up to the 8-byte alignment of the off-heap table layout
+	private static int align8(int bytes) {
+		return (bytes + 7) & ~7;
+	}
+
+	@Test
+	public void test1_10() {
+		// Automata of up to 64 states run on one long; check both of its step forms and the bitset
+		// simulation, including sets wider than a vector and closures stored as dense rows
+		Random random = new Random(10);
+		for (int[] shape : new int[][] { { 20, 3 }, { 64, 3 }, { 64, 40 }, { 65, 3 }, { 130, 3 }, { 700, 6 } }) {
+			NFA nfa = shuffledNFA(shape[0], shape[1], random);
+			for (int t = 0; t < 300; t++) {
+				StringBuilder input = new StringBuilder();
+				int length = random.nextInt(12);
+				for (int i = 0; i < length; i++) {
+					input.append((char) ('a' + random.nextInt(shape[1] + 1)));
+				}
+				String s = input.toString();
+				assertEquals(s, referenceAccepts(nfa, s), nfa.accepts(s));
+				assertEquals(s, referenceMaxCopies(nfa, s), nfa.maxCopies(s));
+			}
+		}
+		System.out.println("nfa1 bit-parallel done");
+	}
+
+	@Test
+	public void test1_11() {
+		// Small enough for one long, then too large for it
+		Random random = new Random(11);
+		List<NFA> small = List.of(nfa1(), nfa2(), nfa3(), nfa4());
+		List<NFA> large = new ArrayList<>(small);
+		for (int i = 0; i < 5; i++) {
+			large.add(shuffledNFA(30, 2, random));
+		}
+		for (List<NFA> patterns : List.of(small, large)) {
+			PatternSet set = PatternSet.of(patterns);
+			assertEquals(set.size(), patterns.size());
+			for (String s : allStrings("#01abe", 4)) {
+				BitSet matched = set.matches(s);
+				List<Integer> ids = new ArrayList<>();
+				for (int p = 0; p < patterns.size(); p++) {
+					assertEquals(s + " pattern " + p, referenceAccepts(patterns.get(p), s), matched.get(p));
+					if (matched.get(p)) {
+						ids.add(p);
+					}
+				}
+				assertArrayEquals(ids.stream().mapToInt(Integer::intValue).toArray(), set.matchIds(s));
+				assertEquals(!ids.isEmpty(), set.matchesAny(s));
+			}
+		}
+		assertEquals(PatternSet.of().matches("0").cardinality(), 0);
+		System.out.println("nfa1 pattern set done");
+	}
+
+	@Test
+	public void test1_12() throws InterruptedException {
+		// Inputs long enough to be split into four chunks, for automata that stay alive to the end
+		Random random = new Random(12);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<NFA> nfas = List.of(nfa1(), nfa2(), nfa3(), shuffledNFA(40, 2, random), shuffledNFA(200, 6, random));
+		for (NFA nfa : nfas) {
+			for (String symbols : List.of("01", "01e", "#01", "ab", "abcdef")) {
+				for (int t = 0; t < 3; t++) {
+					StringBuilder input = new StringBuilder();
+					for (int i = 0; i < 70000 + random.nextInt(3); i++) {
+						input.append(symbols.charAt(random.nextInt(symbols.length())));
+					}
+					String s = input.toString();
+					assertEquals(symbols, nfa.accepts(s), nfa.acceptsParallel(s, pool, 4));
+					assertEquals(symbols, nfa.accepts(s), nfa.acceptsParallel(s));
+				}
+			}
+		}
+		assertTrue(nfa1().acceptsParallel("01".repeat(40000), pool, 4));
+		assertFalse(nfa1().acceptsParallel("01".repeat(40000) + "0", pool, 4));
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		System.out.println("nfa1 parallel accepts done");
+	}
+
+	@Test
+	public void test1_13() {
+		// Off-heap copies and automata built straight into off-heap memory run like the NFA they came from
+		Random random = new Random(13);
+		List<NFA> nfas = List.of(nfa1(), nfa2(), nfa3(), shuffledNFA(40, 2, random), shuffledNFA(150, 6, random));
+		for (NFA nfa : nfas) {
+			CompiledNFA compiled = nfa.compile();
+			OffHeapNFA offHeap = nfa.offHeap();
+			assertEquals(compiled.stateCount(), offHeap.stateCount());
+			for (int state = 0; state < compiled.stateCount(); state++) {
+				assertArrayEquals(compiled.eClosure(state), offHeap.eClosure(state));
+			}
+
+			char[] sigma = new char[nfa.getSigma().size()];
+			int k = 0;
+			for (char c : nfa.getSigma()) {
+				sigma[k++] = c;
+			}
+			OffHeapNFA.Builder builder = OffHeapNFA.builder(compiled.stateCount(), sigma);
+			for (NFAState state : allStates(nfa)) {
+				int from = compiled.stateId(state.getName());
+				if (compiled.isFinal(from)) {
+					builder.setFinal(from);
+				}
+				for (char symbol : state.getSymbols()) {
+					for (NFAState to : state.getTransitions(symbol)) {
+						builder.addTransition(from, symbol, compiled.stateId(to.getName()));
+					}
+				}
+			}
+			OffHeapNFA built = builder.setStart(compiled.startState()).build();
+			assertEquals(offHeap.transitionCount(), built.transitionCount());
+
+			for (String symbols : List.of("01", "01e", "ab", "abcdef")) {
+				for (String s : allStrings(symbols, 5)) {
+					assertEquals(s, compiled.accepts(s), offHeap.accepts(s));
+					assertEquals(s, compiled.accepts(s), built.accepts(s));
+					assertEquals(s, compiled.maxCopies(s), offHeap.maxCopies(s));
+					assertEquals(s, compiled.maxCopies(s), built.maxCopies(s));
+				}
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> OffHeapNFA.builder(2, '0').addTransition(0, '1', 1));
+		assertThrows(IllegalArgumentException.class, () -> OffHeapNFA.builder(2, '0').addTransition(0, '0', 2));
+		OffHeapNFA.Builder builder = OffHeapNFA.builder(1, '0');
+		builder.build();
+		assertThrows(IllegalStateException.class, () -> builder.setFinal(0));
+		System.out.println("nfa1 off-heap done");
+	}
+
+	@Test
+	public void test1_14() throws IOException {
+		// Saved automata load from a mapped file with their states, names and language intact
+		Random random = new Random(14);
+		List<NFA> nfas = List.of(nfa1(), nfa2(), nfa3(), shuffledNFA(150, 6, random));
+		for (int i = 0; i < nfas.size(); i++) {
+			CompiledNFA compiled = nfas.get(i).compile();
+			Path file = folder.newFile("nfa" + i + ".bin").toPath();
+			nfas.get(i).offHeap().writeTo(file);
+			OffHeapNFA loaded = OffHeapNFA.load(file);
+			assertEquals(compiled.stateCount(), loaded.stateCount());
+			assertEquals(compiled.startState(), loaded.startState());
+			for (int state = 0; state < compiled.stateCount(); state++) {
+				assertEquals(compiled.stateName(state), loaded.stateName(state));
+				assertEquals(state, loaded.stateId(compiled.stateName(state)));
+				assertEquals(compiled.isFinal(state), loaded.isFinal(state));
+			}
+			for (String symbols : List.of("01", "01e", "abcdef")) {
+				for (String s : allStrings(symbols, 5)) {
+					assertEquals(s, compiled.accepts(s), loaded.accepts(s));
+					assertEquals(s, compiled.maxCopies(s), loaded.maxCopies(s));
+				}
+			}
+		}
+		assertEquals(-1, nfa1().offHeap().stateId("nope"));
+		assertNull(OffHeapNFA.builder(1).build().stateName(0));
+
+		Path file = folder.newFile("bad.bin").toPath();
+		nfa1().offHeap().writeTo(file);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[4]++; // the version
+		Files.write(file, bytes);
+		assertThrows(IllegalArgumentException.class, () -> OffHeapNFA.load(file));
+		Files.write(file, new byte[] { 1, 2, 3 });
+		assertThrows(IllegalArgumentException.class, () -> OffHeapNFA.load(file));
+
+		// Load checks the ends of the sections; targets, offsets and names inside them are checked by verify
+		nfa1().offHeap().writeTo(file);
+		byte[] good = Files.readAllBytes(file);
+		ByteBuffer header = ByteBuffer.wrap(good).order(ByteOrder.LITTLE_ENDIAN);
+		int n = header.getInt(8);
+		int k = header.getInt(12);
+		int m = header.getInt(20);
+		int c = header.getInt(28);
+		int offsetsAt = 32 + align8(2 * c) + align8(4 * c) + 8 * ((n + 63) / 64);
+		int targetsAt = offsetsAt + align8(4 * (n * k + 1));
+		int namesAt = targetsAt + align8(4 * m);
+		int[][] corruptions = { { targetsAt, n }, { targetsAt + 4 * (m - 1), -1 }, { offsetsAt + 4, -1 },
+				{ offsetsAt + 4 * (n * k - 1), m + 1 }, { namesAt + 4, Integer.MAX_VALUE }, { namesAt + 4 * n, 0 } };
+		for (int[] corruption : corruptions) {
+			ByteBuffer bad = ByteBuffer.wrap(good.clone()).order(ByteOrder.LITTLE_ENDIAN);
+			bad.putInt(corruption[0], corruption[1]);
+			Files.write(file, bad.array());
+			OffHeapNFA unverified = OffHeapNFA.load(file);
+			assertThrows(IllegalArgumentException.class, () -> unverified.verify());
+		}
+		int[][] headerCorruptions = { { offsetsAt, 1 }, { offsetsAt + 4 * n * k, m - 1 }, { namesAt, 1 },
+				{ namesAt + 4 * n, Integer.MAX_VALUE } };
+		for (int[] corruption : headerCorruptions) {
+			ByteBuffer bad = ByteBuffer.wrap(good.clone()).order(ByteOrder.LITTLE_ENDIAN);
+			bad.putInt(corruption[0], corruption[1]);
+			Files.write(file, bad.array());
+			assertThrows(IllegalArgumentException.class, () -> OffHeapNFA.load(file));
+		}
+		Files.write(file, good);
+		assertTrue(OffHeapNFA.load(file).verify().accepts("1"));
+		System.out.println("nfa1 load done");
+	}
+
+	@Test
+	public void test1_15() throws Exception {
+		// Published batches change the latest version only; pinned snapshots keep their language
+		Random random = new Random(15);
+		for (NFA nfa : List.of(nfa1(), nfa2(), nfa3(), shuffledNFA(60, 3, random))) {
+			CompiledNFA compiled = nfa.compile();
+			VersionedNFA versioned = new VersionedNFA(nfa);
+			VersionedNFA.Snapshot pinned = versioned.snapshot();
+			NFA expected = pinned.toNFA();
+			String start = compiled.stateName(compiled.startState());
+			String other = compiled.stateName(compiled.stateCount() - 1);
+
+			VersionedNFA.Snapshot published = versioned.edit().addSigma('2').addStates("new")
+					.addTransitions(start, List.of("new", other), '2').addTransitions("new", List.of(start), '0', '2')
+					.setFinal("new").publish();
+			expected.addSigma('2');
+			expected.addState("new");
+			expected.addTransition(start, Set.of("new", other), '2');
+			expected.addTransition("new", Set.of(start), '0', '2');
+			expected.setFinal("new");
+
+			assertEquals(0, pinned.version());
+			assertEquals(1, published.version());
+			assertSame(published, versioned.snapshot());
+			for (String s : allStrings("012e", 5)) {
+				assertEquals(s, nfa.accepts(s), pinned.accepts(s));
+				assertEquals(s, nfa.maxCopies(s), pinned.maxCopies(s));
+				assertEquals(s, expected.accepts(s), versioned.accepts(s));
+				assertEquals(s, expected.maxCopies(s), versioned.maxCopies(s));
+			}
+		}
+
+		// A batch with an invalid change publishes nothing, and a batch publishes once
+		VersionedNFA versioned = new VersionedNFA(nfa1());
+		VersionedNFA.Batch bad = versioned.edit().addStates("x").setFinal("x").addTransitions("x", List.of("nope"), '0');
+		assertThrows(IllegalArgumentException.class, bad::publish);
+		assertThrows(IllegalArgumentException.class, () -> versioned.edit().addTransitions("x", List.of(), '7').publish());
+		assertEquals(0, versioned.snapshot().version());
+		assertEquals(-1, versioned.snapshot().compiled().stateId("x"));
+		VersionedNFA.Batch once = versioned.edit().addStates("x");
+		once.publish();
+		assertThrows(IllegalStateException.class, once::publish);
+		assertSame(versioned.snapshot(), versioned.edit().publish());
+
+		// Readers running during updates always see one whole version: version v accepts 1^v but not 1^(v+1)
+		NFA chain = new NFA();
+		chain.addSigma('1');
+		chain.addState("q0");
+		chain.setStart("q0");
+		chain.setFinal("q0");
+		VersionedNFA growing = new VersionedNFA(chain);
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		AtomicBoolean done = new AtomicBoolean();
+		List<Future<Integer>> readers = new ArrayList<>();
+		for (int r = 0; r < 3; r++) {
+			readers.add(pool.submit(() -> {
+				int checked = 0;
+				while (!done.get() || checked == 0) {
+					VersionedNFA.Snapshot snapshot = growing.snapshot();
+					int v = (int) snapshot.version();
+					assertTrue(snapshot.accepts("1".repeat(v)));
+					assertFalse(snapshot.accepts("1".repeat(v + 1)));
+					checked++;
+				}
+				return checked;
+			}));
+		}
+		for (int i = 1; i <= 200; i++) {
+			growing.edit().addStates("q" + i).addTransitions("q" + (i - 1), List.of("q" + i), '1').setFinal("q" + i).publish();
+		}
+		done.set(true);
+		for (Future<Integer> reader : readers) {
+			assertTrue(reader.get() > 0);
+		}
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(200, growing.snapshot().version());
+		assertTrue(growing.accepts("1".repeat(200)));
+		System.out.println("nfa1 versioned done");
+	}
+
+	// Leftmost-longest non-overlapping matches found by trying every substring, skipping empty matches right after a match
+	private static List<String> referenceSearch(NFA nfa, String text, int from) {
+		List<String> spans = new ArrayList<>();
+		int cursor = from;
+		int lastEnd = -1;
+		search: while (cursor <= text.length()) {
+			for (int start = cursor; start <= text.length(); start++) {
+				for (int end = text.length(); end >= start; end--) {
+					if (referenceAccepts(nfa, text.substring(start, end))) {
+						if (end == start && start == lastEnd) {
+							break;
+						}
+						spans.add("[" + start + ", " + end + ")");
+						lastEnd = end;
+						cursor = end > start ? end : start + 1;
+						continue search;
+					}
+				}
+			}
+			break;
+		}
+		return spans;
+	}
+
+	// n states q0..q(n-1) over the symbols 'a', 'b', ... ('e' included), with random transitions and finals
+	private static NFA shuffledNFA(int n, int symbols, Random random) {
+		NFA nfa = new NFA();
+		for (int j = 0; j < symbols; j++) {
+			nfa.addSigma((char) ('a' + j));
+		}
+		for (int i = 0; i < n; i++) {
+			nfa.addState("q" + i);
+			if (random.nextInt(4) == 0) {
+				nfa.setFinal("q" + i);
+			}
+		}
+		nfa.setStart("q0");
+		for (int e = 0; e < 3 * n; e++) {
+			char symbol = (char) ('a' + random.nextInt(symbols));
+			nfa.addTransition("q" + random.nextInt(n), Set.of("q" + random.nextInt(n)), symbol);
+		}
+		return nfa;
+	}
 	
 	private NFA nfa2() {
 		NFA nfa = new NFA();
@@ -200,6 +679,289 @@ public class NFATest {
 		
 		System.out.println("nfa1 maxCopies done");
 	}
+
+	@Test
+	public void test2_7() {
+		NFA nfa = nfa2();
+		CompiledNFA compiled = nfa.compile();
+		assertEquals(compiled.stateCount(), 5);
+		assertEquals(closureNames(compiled, "q1"), Set.of("q1", "q2"));
+		assertEquals(closureNames(compiled, "q4"), Set.of("q4"));
+		assertSameAsBuilder(nfa, "01e");
+		System.out.println("nfa2 compile done");
+	}
+
+	@Test
+	public void test2_8() {
+		NFA nfa = nfa2();
+		LazyDFA roomy = nfa.lazyDFA(1 << 20);
+		// Room for only three DFA states, so the cache keeps flushing and falling back
+		LazyDFA cramped = nfa.lazyDFA(100);
+		assertEquals(cramped.capacity(), 3);
+		for (String s : allStrings("01e", 6)) {
+			assertEquals(s, referenceAccepts(nfa, s), roomy.accepts(s));
+			assertEquals(s, referenceMaxCopies(nfa, s), roomy.maxCopies(s));
+			assertEquals(s, referenceAccepts(nfa, s), cramped.accepts(s));
+			assertEquals(s, referenceMaxCopies(nfa, s), cramped.maxCopies(s));
+		}
+		assertEquals(roomy.flushCount(), 0);
+		assertTrue(cramped.flushCount() > 0);
+		assertTrue(cramped.fallbackCount() > 0);
+		assertTrue(cramped.cachedStates() <= 3);
+
+		// A chain of 40 states fills a 25-state cache once; the first fill flushes instead of falling back
+		NFA chain = new NFA();
+		chain.addSigma('a');
+		for (int i = 0; i < 40; i++) {
+			chain.addState("q" + i);
+		}
+		for (int i = 0; i < 39; i++) {
+			chain.addTransition("q" + i, Set.of("q" + (i + 1)), 'a');
+		}
+		chain.setStart("q0");
+		chain.setFinal("q39");
+		LazyDFA once = chain.lazyDFA(25 * 25);
+		assertEquals(once.capacity(), 25);
+		assertTrue(once.accepts("a".repeat(39)));
+		assertEquals(once.flushCount(), 1);
+		assertEquals(once.fallbackCount(), 0);
+		System.out.println("nfa2 lazyDFA done");
+	}
+
+	@Test
+	public void test2_9() {
+		NFA nfa = nfa2();
+		MinimalDFA dfa = nfa.determinize();
+		for (String s : allStrings("01e", 7)) {
+			assertEquals(s, referenceAccepts(nfa, s), dfa.accepts(s));
+		}
+		assertTrue(dfa.toNFA().isDFA());
+
+		// Without the 'e' column the DFA is over {0,1} only, and minimizing it again changes nothing
+		MinimalDFA binary = dfa.toNFA().determinize();
+		assertEquals(binary.stateCount(), binary.toNFA().determinize().stateCount());
+		for (String s : allStrings("01", 7)) {
+			assertEquals(s, referenceAccepts(nfa, s), binary.accepts(s));
+		}
+
+		// nfa1 accepts exactly the strings over {0,1} that end in 1, which takes two states
+		assertEquals(nfa1().determinize().toNFA().determinize().stateCount(), 2);
+		System.out.println("nfa2 determinize done");
+	}
+
+	@Test
+	public void test2_10() {
+		NFA nfa = new NFABuilder()
+				.addSigma('0', '1')
+				.addStates("q0", "q1", "q2", "q3", "q4")
+				.setStart("q0")
+				.setFinal("q3")
+				.addTransitions("q0", Set.of("q0"), '0')
+				.addTransitions("q0", Set.of("q0", "q1"), '1')
+				.addTransitions(new String[] { "q1", "q2", "q2", "q2", "q4" }, new char[] { 'e', '0', '1', '1', '0' },
+						new String[] { "q2", "q4", "q2", "q3", "q1" })
+				.build();
+		NFA expected = nfa2();
+		for (String s : allStrings("01e", 6)) {
+			assertEquals(s, expected.accepts(s), nfa.accepts(s));
+			assertEquals(s, expected.maxCopies(s), nfa.maxCopies(s));
+		}
+
+		// Lookups compare names by value, not by reference
+		String name = new String("q2");
+		assertSame(nfa.getState(name), nfa.getState("q2"));
+		assertTrue(nfa.isStart(new String("q0")));
+		assertTrue(nfa.isFinal(new String("q3")));
+		assertTrue(nfa.addTransition(new String("q4"), Set.of(new String("q3")), '1'));
+
+		NFABuilder builder = new NFABuilder().addSigma('0').addStates("a");
+		assertThrows(IllegalArgumentException.class, () -> builder.setStart("b"));
+		assertThrows(IllegalArgumentException.class, () -> builder.addTransitions("a", Set.of("a"), '1'));
+		builder.build();
+		assertThrows(IllegalStateException.class, () -> builder.addStates("b"));
+		System.out.println("nfa2 builder done");
+	}
+
+	@Test
+	public void test2_11() throws IOException {
+		NFA nfa = nfa2();
+		List<Integer> sizes = new ArrayList<>();
+		List<SimulationMetrics> runs = new ArrayList<>();
+		nfa.setSimulationListener(new SimulationListener() {
+			@Override
+			public void onStep(int position, int activeStates) {
+				assertEquals(position, sizes.size());
+				sizes.add(activeStates);
+			}
+
+			@Override
+			public void onRun(SimulationMetrics metrics) {
+				runs.add(metrics);
+			}
+		});
+
+		assertTrue(nfa.accepts("010011"));
+		List<Integer> expected = new ArrayList<>();
+		for (Set<NFAState> states : referenceRun(nfa, "010011")) {
+			expected.add(states.size());
+		}
+		assertEquals(expected, sizes);
+		SimulationMetrics metrics = runs.get(0);
+		assertEquals(metrics.getInputLength(), 6);
+		assertEquals(metrics.getMaxActive(), 4);
+		assertEquals(metrics.getEmptyAt(), -1);
+		assertTrue(metrics.isAccepted());
+		assertTrue(metrics.getTransitionsFollowed() >= 6);
+		assertTrue(metrics.getClosureExpansions() >= metrics.getTransitionsFollowed() / 2);
+
+		sizes.clear();
+		assertEquals(nfa.maxCopies("0101"), 3);
+		assertEquals(runs.get(1).getMaxActive(), 3);
+
+		// "e" has no transition from q0, so the set is empty after the first character
+		sizes.clear();
+		assertFalse(nfa.accepts("e01"));
+		assertEquals(runs.get(2).getEmptyAt(), 1);
+
+		nfa.setSimulationListener(null);
+		nfa.accepts("1111");
+		assertEquals(runs.size(), 3);
+
+		// With a JFR recording running, every run is committed as an fa.nfa.Simulation event
+		Path dump = folder.newFile("runs.jfr").toPath();
+		try (Recording recording = new Recording()) {
+			recording.enable("fa.nfa.Simulation");
+			recording.start();
+			nfa.accepts("1111");
+			nfa.maxCopies("0001100");
+			recording.stop();
+			recording.dump(dump);
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+		assertEquals(events.size(), 2);
+		assertTrue(events.get(0).getBoolean("accepted"));
+		assertEquals(events.get(1).getInt("maxActive"), 4);
+		System.out.println("nfa2 instrumentation done");
+	}
+
+	@Test
+	public void test2_12() {
+		// Every accepted string starts with "ab", ends with "ba" and contains an x
+		NFA nfa = new NFABuilder()
+				.addSigma('a', 'b', 'x', '0', '1')
+				.addStates("p0", "p1", "p2", "p3", "p4", "p5")
+				.setStart("p0")
+				.setFinal("p5")
+				.addTransitions(new String[] { "p0", "p1", "p2", "p2", "p2", "p3", "p3", "p4" },
+						new char[] { 'a', 'b', '0', '1', 'x', '0', 'b', 'a' },
+						new String[] { "p1", "p2", "p2", "p2", "p3", "p3", "p4", "p5" })
+				.build();
+		List<String> inputs = allStrings("ab01xe", 6);
+		inputs.add("ab0x0ba");
+		inputs.add("ab01x00ba");
+		boolean[] accepted = nfa.acceptsAll(inputs);
+		for (int i = 0; i < inputs.size(); i++) {
+			String s = inputs.get(i);
+			assertEquals(s, referenceAccepts(nfa, s), nfa.accepts(s));
+			assertEquals(s, referenceAccepts(nfa, s), accepted[i]);
+		}
+		assertTrue(nfa.accepts("ab01x00ba"));
+		assertTrue(nfa.compile().accepts(new StringBuilder("abxba")));
+		assertFalse(nfa.accepts("ab01100ba"));
+
+		assertEquals(nfa.search("0ab1ab0xbaxab").toString(), "[[4, 10)]");
+		assertEquals(nfa.search("ab01ba ab0ba").size(), 0);
+		System.out.println("nfa2 prefilter done");
+	}
+
+	@Test
+	public void test2_13() {
+		// Range transitions compile to one column per class of symbols that behave alike
+		NFA nfa = new NFA();
+		nfa.addSigma('a', 'z');
+		nfa.addSigma('0', '9');
+		nfa.addState("q0");
+		nfa.addState("q1");
+		nfa.setStart("q0");
+		nfa.setFinal("q1");
+		assertTrue(nfa.addTransition("q0", Set.of("q1"), 'a', 'z'));
+		assertTrue(nfa.addTransition("q1", Set.of("q1"), '0', '9'));
+		assertFalse(nfa.addTransition("q1", Set.of("q1"), 'A', 'Z'));
+		assertFalse(nfa.addTransition("q1", Set.of("q2"), 'a', 'z'));
+		CompiledNFA compiled = nfa.compile();
+		assertEquals(3, compiled.symbolCount()); // letters, digits and 'e'
+		assertEquals(25, compiled.symbolClass(compiled.symbolId('q')).length);
+		assertEquals(compiled.symbolId('a'), compiled.symbolId('z'));
+		assertNotEquals(compiled.symbolId('a'), compiled.symbolId('e'));
+		assertEquals(-1, compiled.symbolId('A'));
+		for (String s : List.of("x", "x12", "z0", "q", "a9b", "e1", "1", "", "xA")) {
+			assertEquals(s, referenceAccepts(nfa, s), nfa.accepts(s));
+		}
+		assertTrue(nfa.determinize().toNFA().accepts("m42"));
+		assertTrue(nfa.offHeap().accepts("m42"));
+
+		// A Unicode-sized alphabet still needs only a handful of columns
+		NFA wide = new NFABuilder().addSigmaRange('\u0000', '\uFFFF').addStates("q0", "q1").setStart("q0").setFinal("q1")
+				.addTransitions("q0", List.of("q1"), '\u0000', '\uFFFF').addTransitions("q1", List.of("q0"), '0', '9').build();
+		assertEquals(3, wide.compile().symbolCount());
+		assertTrue(wide.accepts("\u4e2d"));
+		assertTrue(wide.accepts("\u4e2d5x"));
+		assertFalse(wide.accepts("\u4e2dx"));
+		// Sigma spread over a wide span maps through shared pages, with gaps outside every class
+		NFA sparse = new NFABuilder().addSigma('a', '\u4e2d').addStates("q0", "q1").setStart("q0").setFinal("q1")
+				.addTransitions("q0", List.of("q1"), '\u4e2d').build();
+		assertEquals(2, sparse.compile().symbolCount());
+		assertEquals(-1, sparse.compile().symbolId('b'));
+		assertEquals(-1, sparse.compile().symbolId('\uffff'));
+		assertTrue(sparse.accepts("\u4e2d"));
+		assertFalse(sparse.accepts("a"));
+		assertThrows(IllegalArgumentException.class, () -> new NFABuilder().addSigma('a').addStates("q0")
+				.addTransitions("q0", List.of("q0"), 'b', 'z'));
+
+		// A pattern whose one class the other pattern splits in two
+		NFA both = new NFA();
+		NFA onlyA = new NFA();
+		for (NFA pattern : List.of(both, onlyA)) {
+			pattern.addSigma('a', 'b');
+			pattern.addState("p");
+			pattern.addState("q");
+			pattern.setStart("p");
+			pattern.setFinal("q");
+		}
+		assertTrue(both.addTransition("p", Set.of("q"), 'a', 'b'));
+		assertTrue(onlyA.addTransition("p", Set.of("q"), 'a'));
+		assertEquals(1, both.compile().symbolCount());
+		assertEquals(2, onlyA.compile().symbolCount());
+		PatternSet split = PatternSet.of(both, onlyA);
+		assertArrayEquals(new int[] { 0, 1 }, split.matchIds("a"));
+		assertArrayEquals(new int[] { 0 }, split.matchIds("b"));
+		assertArrayEquals(new int[0], split.matchIds("ab"));
+
+		// Classes found on random automata keep every result the same
+		Random random = new Random(213);
+		for (int t = 0; t < 20; t++) {
+			NFA shuffled = shuffledNFA(12, 6, random);
+			for (int r = 0; r < 4; r++) {
+				char first = (char) ('a' + random.nextInt(6));
+				char last = (char) (first + random.nextInt(3));
+				shuffled.addTransition("q" + random.nextInt(12), Set.of("q" + random.nextInt(12)), first, last);
+			}
+			NFA trimmed = shuffled.trim();
+			NFA dfa = shuffled.determinize().toNFA();
+			PatternSet set = PatternSet.of(shuffled, nfa1());
+			for (String s : allStrings("abcdef", 4)) {
+				boolean expected = referenceAccepts(shuffled, s);
+				assertEquals(s, expected, shuffled.accepts(s));
+				assertEquals(s, referenceMaxCopies(shuffled, s), shuffled.maxCopies(s));
+				assertEquals(s, expected, trimmed.accepts(s));
+				if (s.indexOf('e') < 0) {
+					assertEquals(s, expected, dfa.accepts(s)); // toNFA() drops the input symbol 'e'
+				}
+				assertEquals(s, expected, set.matches(s).get(0));
+			}
+		}
+		System.out.println("nfa2 symbol classes done");
+	}
 	
 	private NFA nfa3() {
 		NFA nfa = new NFA();
@@ -300,6 +1062,370 @@ public class NFATest {
 		System.out.println("nfa1 maxCopies done");
 	}
 
+	@Test
+	public void test3_7() {
+		NFA nfa = nfa3();
+		CompiledNFA compiled = nfa.compile();
+		assertEquals(closureNames(compiled, "W"), Set.of("W", "L", "I"));
+		assertSameAsBuilder(nfa, "#01e");
+		// compile() is cached until the NFA changes
+		assertSame(compiled, nfa.compile());
+		assertTrue(nfa.addTransition("I", Set.of("W"), '#'));
+		assertNotSame(compiled, nfa.compile());
+		assertSameAsBuilder(nfa, "#01e");
+		System.out.println("nfa3 compile done");
+	}
+
+	@Test
+	public void test3_8() {
+		NFA nfa = nfa3();
+		Set<NFAState> closureN = nfa.eClosure(nfa.getState("N"));
+		assertEquals(nfa.eClosure(nfa.getState("I")), Set.of(nfa.getState("I")));
+
+		// A new epsilon edge closes the cycle W -> L -> I -> W
+		assertTrue(nfa.addTransition("I", Set.of("W"), 'e'));
+		Set<NFAState> cycle = Set.of(nfa.getState("W"), nfa.getState("L"), nfa.getState("I"));
+		assertEquals(nfa.eClosure(nfa.getState("W")), cycle);
+		assertEquals(nfa.eClosure(nfa.getState("L")), cycle);
+		assertEquals(nfa.eClosure(nfa.getState("I")), cycle);
+		// Closures that cannot reach the new edge are not rebuilt
+		assertSame(closureN, nfa.eClosure(nfa.getState("N")));
+
+		assertTrue(nfa.addState("X"));
+		assertEquals(nfa.eClosure(nfa.getState("X")), Set.of(nfa.getState("X")));
+		assertTrue(nfa.addTransition("N", Set.of("X"), 'e'));
+		assertEquals(nfa.eClosure(nfa.getState("N")), Set.of(nfa.getState("N"), nfa.getState("X")));
+		assertSameAsBuilder(nfa, "#01e");
+
+		// States on an epsilon cycle share one closure, and it cannot be modified
+		NFA fresh = new NFA();
+		fresh.addState("a");
+		fresh.addState("b");
+		fresh.addTransition("a", Set.of("b"), 'e');
+		fresh.addTransition("b", Set.of("a"), 'e');
+		assertSame(fresh.eClosure(fresh.getState("a")), fresh.eClosure(fresh.getState("b")));
+		assertThrows(UnsupportedOperationException.class, () -> fresh.eClosure(fresh.getState("a")).clear());
+		System.out.println("nfa3 eClosure cache done");
+	}
+
+	@Test
+	public void test3_9() {
+		NFA nfa = nfa3();
+		MinimalDFA dfa = nfa.determinize();
+		for (String s : allStrings("#01e2", 6)) {
+			assertEquals(s, referenceAccepts(nfa, s), dfa.accepts(s));
+		}
+		NFA asNFA = dfa.toNFA();
+		assertTrue(asNFA.isDFA());
+		for (String s : allStrings("#01", 6)) {
+			assertEquals(s, referenceAccepts(nfa, s), asNFA.accepts(s));
+		}
+		System.out.println("nfa3 determinize done");
+	}
+
+	@Test
+	public void test3_10() throws InterruptedException {
+		NFA nfa = nfa3();
+		List<String> inputs = allStrings("#01e", 7);
+		boolean[] accepted = nfa.acceptsAll(inputs);
+		int[] copies = nfa.maxCopiesAll(inputs);
+
+		// A list without random access is read in order, not walked again for every input
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		boolean[] acceptedOnExecutor = nfa.acceptsAll(new LinkedList<>(inputs), executor);
+		int[] copiesOnExecutor = nfa.maxCopiesAll(new LinkedList<>(inputs), executor);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		for (int i = 0; i < inputs.size(); i++) {
+			String s = inputs.get(i);
+			assertEquals(s, referenceAccepts(nfa, s), accepted[i]);
+			assertEquals(s, referenceAccepts(nfa, s), acceptedOnExecutor[i]);
+			assertEquals(s, referenceMaxCopies(nfa, s), copies[i]);
+			assertEquals(s, referenceMaxCopies(nfa, s), copiesOnExecutor[i]);
+		}
+		assertEquals(nfa.acceptsAll(List.of()).length, 0);
+		System.out.println("nfa3 acceptsAll done");
+	}
+
+	@Test
+	public void test3_11() {
+		NFA nfa = nfa3();
+		assertTrue(nfa.addState("U"));
+		assertTrue(nfa.addState("D"));
+		assertTrue(nfa.addTransition("U", Set.of("W"), '0'));
+		assertTrue(nfa.addTransition("N", Set.of("D"), '1'));
+
+		NFA free = nfa.removeEpsilons();
+		for (String s : allStrings("#01", 7)) {
+			assertEquals(s, referenceAccepts(nfa, s), free.accepts(s));
+		}
+		// U cannot be reached and D cannot reach N, so both are gone
+		assertNull(free.getState("U"));
+		assertNull(free.getState("D"));
+		assertNotNull(free.getState("L"));
+		for (String name : List.of("W", "L", "I", "N")) {
+			if (free.getState(name) != null) {
+				assertFalse(free.getState(name).hasTransitions('e'));
+			}
+		}
+		// W reaches I on epsilons, so W can now read 1s itself
+		assertEquals(free.getState("W").getTransitions('1'), Set.of(free.getState("I"), free.getState("N")));
+		assertEquals(free.getSigma(), nfa.getSigma());
+
+		assertEquals(nfa4().removeEpsilons().compile().stateCount(), 0);
+		System.out.println("nfa3 removeEpsilons done");
+	}
+
+	@Test
+	public void test3_12() {
+		NFA nfa = nfa3();
+		assertTrue(nfa.addState("U"));
+		assertTrue(nfa.addState("D"));
+		assertTrue(nfa.addTransition("U", Set.of("W"), '0'));
+		assertTrue(nfa.addTransition("N", Set.of("D"), '1'));
+		assertTrue(nfa.addTransition("D", Set.of("D"), '0'));
+
+		// Runs that only have D left are rejected early, which must not change any answer
+		assertSameAsBuilder(nfa, "#01e");
+		LazyDFA lazy = nfa.lazyDFA(1 << 16);
+		for (String s : allStrings("#01", 6)) {
+			assertEquals(s, referenceAccepts(nfa, s), lazy.accepts(s));
+		}
+
+		NFA trimmed = nfa.trim();
+		for (String s : allStrings("#01e", 6)) {
+			assertEquals(s, referenceAccepts(nfa, s), trimmed.accepts(s));
+			assertTrue(s, trimmed.maxCopies(s) <= referenceMaxCopies(nfa, s));
+		}
+		assertNull(trimmed.getState("U"));
+		assertNull(trimmed.getState("D"));
+		assertEquals(trimmed.compile().stateCount(), 4);
+		assertEquals(trimmed.getState("W").getTransitions('e'), Set.of(trimmed.getState("L")));
+		assertEquals(trimmed.getSigma(), nfa.getSigma());
+		assertTrue(trimmed.isStart("W"));
+		assertTrue(trimmed.isFinal("N"));
+
+		assertEquals(nfa4().trim().compile().stateCount(), 0);
+		System.out.println("nfa3 trim done");
+	}
+
+	@Test
+	public void test3_13() {
+		Random random = new Random(13);
+		List<NFA> nfas = List.of(nfa1(), nfa3(), shuffledNFA(100, 2, random), shuffledNFA(6, 2, random));
+		List<String> texts = new ArrayList<>(allStrings("#01e", 4));
+		for (int t = 0; t < 40; t++) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < 25; i++) {
+				text.append("#01abe".charAt(random.nextInt(6)));
+			}
+			texts.add(text.toString());
+		}
+		for (NFA nfa : nfas) {
+			for (String text : texts) {
+				List<String> expected = referenceSearch(nfa, text, 0);
+				List<MatchSpan> found = nfa.search(text);
+				assertEquals(text, expected.toString(), found.toString());
+				Iterator<MatchSpan> it = nfa.findAll(text);
+				for (MatchSpan span : found) {
+					assertTrue(it.hasNext());
+					assertEquals(span, it.next());
+				}
+				assertFalse(it.hasNext());
+
+				int from = text.length() / 2;
+				List<String> fromHalf = referenceSearch(nfa, text, from);
+				MatchSpan first = nfa.find(text, from);
+				assertEquals(text, fromHalf.isEmpty() ? null : fromHalf.get(0), first == null ? null : first.toString());
+			}
+		}
+
+		// nfa1 accepts strings over {0,1} ending in 1, so the longest match runs to the last 1 of each block
+		List<MatchSpan> spans = nfa1().search("x0110x10x");
+		assertEquals(spans.size(), 2);
+		assertEquals(spans.get(0).getStart(), 1);
+		assertEquals(spans.get(0).getEnd(), 4);
+		assertEquals(spans.get(1).toString(), "[6, 7)");
+		System.out.println("nfa3 search done");
+	}
+
+	@Test
+	public void test3_14() {
+		// Transitions are stored per symbol without duplicates, in ascending symbol order
+		NFA nfa = nfa3();
+		NFAState w = nfa.getState("W");
+		char[] symbols = w.getSymbols();
+		for (int i = 1; i < symbols.length; i++) {
+			assertTrue(symbols[i - 1] < symbols[i]);
+		}
+		assertTrue(nfa.addTransition("W", Set.of("L", "I"), '1'));
+		assertTrue(nfa.addTransition("W", Set.of("L"), '1'));
+		Set<NFAState> targets = w.getTransitions('1');
+		assertEquals(targets.size(), new HashSet<>(targets).size());
+		assertTrue(targets.contains(nfa.getState("L")));
+		assertTrue(w.hasTransitions('1'));
+		assertFalse(w.hasTransitions('0'));
+		assertTrue(w.getTransitions('0').isEmpty());
+		assertThrows(UnsupportedOperationException.class, () -> w.getTransitions('1').clear());
+		// The targets on the symbol plus the closure of the state
+		assertEquals(Set.of(w, nfa.getState("L"), nfa.getState("I")), nfa.getToState(w, '1'));
+		System.out.println("nfa3 transition storage done");
+	}
+
+	@Test(timeout = 10000)
+	public void test3_15() {
+		// Ranges over the whole of Unicode are merged into each state in one pass
+		NFA nfa = new NFA();
+		nfa.addSigma('\u0000', '\uFFFF');
+		for (int i = 0; i < 8; i++) {
+			nfa.addState("q" + i);
+		}
+		nfa.setStart("q0");
+		nfa.setFinal("q7");
+		assertTrue(nfa.addTransition("q1", Set.of("q2"), 'x'));
+		for (int i = 0; i < 7; i++) {
+			assertTrue(nfa.addTransition("q" + i, Set.of("q" + (i + 1)), '\u0000', '\uFFFF'));
+			assertTrue(nfa.addTransition("q" + i, Set.of("q" + (i + 1), "q0"), '\u0100', '\uFFFF'));
+		}
+		NFAState q1 = nfa.getState("q1");
+		char[] symbols = q1.getSymbols();
+		assertEquals(0xFFFF, symbols.length); // everything but 'e'
+		for (int i = 1; i < symbols.length; i++) {
+			assertTrue(symbols[i - 1] < symbols[i]);
+		}
+		assertEquals(Set.of(nfa.getState("q2")), q1.getTransitions('x'));
+		assertEquals(Set.of(nfa.getState("q2"), nfa.getState("q0")), q1.getTransitions('\u4E2D'));
+		assertFalse(q1.hasTransitions('e'));
+		assertFalse(nfa.isDFA());
+		assertTrue(nfa.accepts("\u4E2DA\uFFFFabcd"));
+		assertFalse(nfa.accepts("abcdef"));
+
+		NFABuilder builder = new NFABuilder().addSigmaRange('\u0000', '\uFFFF').addStates("s", "t").setStart("s").setFinal("t");
+		for (int i = 0; i < 8; i++) {
+			builder.addTransitions("s", List.of("t", "t"), '\u0000', '\uFFFF');
+		}
+		NFA built = builder.addTransitions(new String[] { "t", "t", "s" }, new char[] { 'b', 'a', 'a' }, new String[] { "s", "t", "t" })
+				.build();
+		assertEquals(0xFFFF, built.getState("s").getSymbols().length);
+		assertEquals(Set.of(built.getState("t")), built.getState("s").getTransitions('a'));
+		assertArrayEquals(new char[] { 'a', 'b' }, built.getState("t").getSymbols());
+		assertTrue(built.isDFA());
+		assertTrue(built.accepts("\u4E2Db\u0000"));
+		assertFalse(built.accepts("\u4E2Dc"));
+		System.out.println("unicode range transitions done");
+	}
+
+	@Test(timeout = 10000)
+	public void test3_16() {
+		// Sigma and the transitions keep ranges whole, so a chain of Unicode-wide states stays small
+		int n = 2000;
+		NFA nfa = new NFA();
+		nfa.addSigma('\u0000', '\uFFFF');
+		for (int i = 0; i < n; i++) {
+			nfa.addState("q" + i);
+			if (i > 0) {
+				assertTrue(nfa.addTransition("q" + (i - 1), Set.of("q" + i), '\u0000', '\uFFFF'));
+			}
+		}
+		nfa.setStart("q0");
+		nfa.setFinal("q" + (n - 1));
+		assertTrue(nfa.addTransition("q0", Set.of("q0"), '0', '9'));
+		assertEquals(0x10000, nfa.getSigma().size());
+		assertTrue(nfa.getSigma().contains('\uABCD'));
+		assertFalse(nfa.isDFA());
+		assertFalse(nfa.isComplete());
+
+		CompiledNFA compiled = nfa.compile();
+		assertEquals(3, compiled.symbolCount()); // digits, 'e' and everything else
+		assertEquals(0x10000 - 11, compiled.symbolClass(compiled.symbolId('\u4E2D')).length);
+		StringBuilder chain = new StringBuilder("42");
+		for (int i = 0; i < n - 1; i++) {
+			chain.append((char) ('\u4E00' + i));
+		}
+		String input = chain.toString();
+		assertTrue(nfa.accepts(input));
+		assertFalse(nfa.accepts(input.substring(3)));
+		assertTrue(nfa.trim().accepts(input));
+		assertTrue(nfa.removeEpsilons().accepts(input));
+		VersionedNFA versioned = new VersionedNFA(nfa);
+		versioned.edit().addSigmaRange('\u0000', '\uFFFF').addTransitions("q1", List.of("q0"), 'a', 'z').publish();
+		assertEquals(nfa.getSigma(), versioned.snapshot().getSigma());
+		assertTrue(versioned.accepts(input));
+		assertTrue(versioned.accepts("0x" + input.substring(2)));
+		assertTrue(versioned.snapshot().toNFA().accepts("0x" + input.substring(2)));
+		System.out.println("unicode range storage done");
+	}
+
+	@Test(timeout = 10000)
+	public void test3_17() {
+		// A run that outlives a short match does not make the search rescan the text for every match
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		nfa.addSigma('c');
+		for (String state : List.of("s", "f1", "m", "f2")) {
+			nfa.addState(state);
+		}
+		nfa.setStart("s");
+		nfa.setFinal("f1");
+		nfa.setFinal("f2");
+		assertTrue(nfa.addTransition("s", Set.of("f1", "m"), 'a'));
+		assertTrue(nfa.addTransition("m", Set.of("m"), 'a'));
+		assertTrue(nfa.addTransition("m", Set.of("m"), 'b'));
+		assertTrue(nfa.addTransition("m", Set.of("f2"), 'c'));
+		int n = 200000;
+		String text = "a".repeat(n);
+		List<MatchSpan> spans = nfa.search(text);
+		assertEquals(n, spans.size());
+		for (int i = 0; i < n; i++) {
+			assertEquals(i, spans.get(i).getStart());
+			assertEquals(i + 1, spans.get(i).getEnd());
+		}
+		// A 'c' at the end lets the run from 0 match the whole text instead
+		assertEquals("[[0, " + (n + 1) + ")]", nfa.search(text + "c").toString());
+		assertEquals("[1, " + (n + 1) + ")", nfa.compile().find(text + "c", 1).toString());
+		System.out.println("adversarial search done");
+	}
+
+	@Test
+	public void test3_18() {
+		// The search jumps between occurrences of the prefix "zq" and finds the same matches as a full scan
+		NFA nfa = new NFA();
+		for (char c = 'a'; c <= 'z'; c++) {
+			nfa.addSigma(c);
+		}
+		for (String state : List.of("z", "q", "s", "f")) {
+			nfa.addState(state);
+		}
+		nfa.setStart("z");
+		nfa.setFinal("f");
+		assertTrue(nfa.addTransition("z", Set.of("q"), 'z'));
+		assertTrue(nfa.addTransition("q", Set.of("s"), 'q'));
+		assertTrue(nfa.addTransition("s", Set.of("s"), 'a', 'd'));
+		assertTrue(nfa.addTransition("s", Set.of("f"), 'x'));
+		StringBuilder text = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		Random random = new Random(18);
+		for (int i = 0; i < 200; i++) {
+			text.append("bcdab".repeat(random.nextInt(50)));
+			int start = text.length();
+			boolean restarted = random.nextBoolean();
+			text.append(restarted ? "zqzqcx" : "zqabx");
+			expected.add("[" + (restarted ? start + 2 : start) + ", " + text.length() + ")");
+			if (random.nextInt(4) == 0) {
+				text.append("zqab"); // a candidate that never ends in x
+			}
+		}
+		text.append("zqz");
+		assertEquals(expected.toString(), nfa.search(text.toString()).toString());
+		assertEquals(expected.toString(), nfa.compile().search(text).toString());
+		String head = text.substring(0, 300);
+		assertEquals(referenceSearch(nfa, head, 0).toString(), nfa.search(head).toString());
+		assertEquals(0, nfa.search("bcdab".repeat(10000) + "zq").size());
+		System.out.println("literal skip search done");
+	}
+
 	private NFA nfa4() {
 		return new NFA(); // Returns an empty NFA
 	}
@@ -352,4 +1478,169 @@ public class NFATest {
 		System.out.println("nfa4 maxCopies done");
 	}
 
+	@Test
+	public void test4_7() {
+		NFA nfa = nfa4();
+		CompiledNFA compiled = nfa.compile();
+		assertEquals(compiled.stateCount(), 0);
+		assertEquals(compiled.startState(), -1);
+		assertFalse(compiled.accepts(""));
+		assertEquals(0, compiled.maxCopies("any"));
+		System.out.println("nfa4 compile done");
+	}
+
+	@Test
+	public void test4_8() {
+		// isDFA and isComplete follow every added transition, and deterministic automata run on a single pointer
+		Random random = new Random(48);
+		int deterministic = 0;
+		for (int t = 0; t < 200; t++) {
+			NFA nfa = new NFA();
+			nfa.addSigma('0');
+			nfa.addSigma('1');
+			int n = 1 + random.nextInt(6);
+			for (int i = 0; i < n; i++) {
+				nfa.addState("q" + i);
+				if (random.nextBoolean()) {
+					nfa.setFinal("q" + i);
+				}
+			}
+			nfa.setStart("q0");
+			for (int e = random.nextInt(2 * n + 2); e > 0; e--) {
+				char symbol = "01e0101".charAt(random.nextInt(7));
+				nfa.addTransition("q" + random.nextInt(n), Set.of("q" + random.nextInt(n)), symbol);
+				assertEquals(referenceIsDFA(nfa), nfa.isDFA());
+				assertEquals(referenceIsComplete(nfa), nfa.isComplete());
+			}
+			NFA copy = new NFABuilder().addSigma('0', '1').addStates("x").build();
+			assertTrue(copy.isDFA());
+			assertFalse(copy.isComplete());
+
+			CompiledNFA compiled = nfa.compile();
+			assertEquals(nfa.isDFA(), compiled.isDeterministic());
+			if (compiled.isDeterministic()) {
+				deterministic++;
+			}
+			for (String s : allStrings("01e", 4)) {
+				assertEquals(s, referenceAccepts(nfa, s), nfa.accepts(s));
+				assertEquals(s, referenceMaxCopies(nfa, s), nfa.maxCopies(s));
+			}
+		}
+		assertTrue(deterministic > 20);
+		NFA complete = nfa2();
+		assertEquals(referenceIsComplete(complete), complete.isComplete());
+		System.out.println("nfa4 determinism tracking done");
+	}
+
+	// isDFA as it was computed before: no epsilon transitions and no symbol with two targets
+	private static boolean referenceIsDFA(NFA nfa) {
+		List<NFAState> states = allStates(nfa);
+		for (NFAState state : states) {
+			for (char symbol : nfa.getSigma()) {
+				if (state.getTransitions(symbol).size() > 1) {
+					return false;
+				}
+			}
+			if (state.hasTransitions('e')) {
+				return false;
+			}
+		}
+		return !states.isEmpty();
+	}
+
+	private static boolean referenceIsComplete(NFA nfa) {
+		for (NFAState state : allStates(nfa)) {
+			for (char symbol : nfa.getSigma()) {
+				if (symbol != 'e' && !state.hasTransitions(symbol)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static Set<String> closureNames(CompiledNFA compiled, String name) {
+		Set<String> names = new HashSet<>();
+		for (int state : compiled.eClosure(compiled.stateId(name))) {
+			names.add(compiled.stateName(state));
+		}
+		return names;
+	}
+
+	// Checks accepts and maxCopies of nfa and nfa.compile() against a plain HashSet simulation on every string up to length 6
+	private static void assertSameAsBuilder(NFA nfa, String symbols) {
+		CompiledNFA compiled = nfa.compile();
+		for (String s : allStrings(symbols, 6)) {
+			assertEquals(s, referenceAccepts(nfa, s), nfa.accepts(s));
+			assertEquals(s, referenceAccepts(nfa, s), compiled.accepts(s));
+			assertEquals(s, referenceMaxCopies(nfa, s), nfa.maxCopies(s));
+			assertEquals(s, referenceMaxCopies(nfa, s), compiled.maxCopies(s));
+		}
+	}
+
+	// The breadth-first simulation NFA.accepts originally used, kept as an oracle for the faster engines
+	private static List<Set<NFAState>> referenceRun(NFA nfa, String s) {
+		List<Set<NFAState>> steps = new ArrayList<>();
+		NFAState start = null;
+		for (NFAState state : allStates(nfa)) {
+			if (nfa.isStart(state.getName())) {
+				start = state;
+			}
+		}
+		Set<NFAState> current = start == null ? new HashSet<>() : new HashSet<>(nfa.eClosure(start));
+		steps.add(current);
+		for (char c : s.toCharArray()) {
+			Set<NFAState> next = new HashSet<>();
+			for (NFAState state : current) {
+				for (NFAState target : state.getTransitions(c)) {
+					next.addAll(nfa.eClosure(target));
+				}
+			}
+			current = next;
+			steps.add(current);
+		}
+		return steps;
+	}
+
+	private static boolean referenceAccepts(NFA nfa, String s) {
+		List<Set<NFAState>> steps = referenceRun(nfa, s);
+		for (NFAState state : steps.get(steps.size() - 1)) {
+			if (nfa.isFinal(state.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int referenceMaxCopies(NFA nfa, String s) {
+		int copyMax = 0;
+		for (Set<NFAState> states : referenceRun(nfa, s)) {
+			copyMax = Math.max(copyMax, states.size());
+		}
+		return copyMax;
+	}
+
+	private static List<NFAState> allStates(NFA nfa) {
+		List<NFAState> states = new ArrayList<>();
+		CompiledNFA compiled = nfa.compile();
+		for (int i = 0; i < compiled.stateCount(); i++) {
+			states.add(nfa.getState(compiled.stateName(i)));
+		}
+		return states;
+	}
+
+	private static List<String> allStrings(String symbols, int maxLength) {
+		List<String> strings = new ArrayList<>();
+		strings.add("");
+		for (int i = 0; i < strings.size(); i++) {
+			String s = strings.get(i);
+			if (s.length() < maxLength) {
+				for (char c : symbols.toCharArray()) {
+					strings.add(s + c);
+				}
+			}
+		}
+		return strings;
+	}
+
 }